@@ -0,0 +1,74 @@
+package com.connect6.client;
+
+import com.connect6.grpc.ConnectRequest;
+import com.connect6.grpc.ConnectResponse;
+import com.connect6.grpc.Connect6GameGrpc;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.stub.StreamObserver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Проверка балансировки на нескольких локальных серверах: подключает игроков
+ * через LeastLoadedBalancer и печатает, сколько ушло на каждый сервер.
+ * Пример: запустить Connect6GrpcServer на 8080 и 8081, затем
+ * BalancerProbe localhost:8080,localhost:8081 40
+ */
+public class BalancerProbe {
+    public static void main(String[] args) throws Exception {
+        List<String> servers = Arrays.asList((args.length > 0 ? args[0] : "localhost:8080,localhost:8081").split(","));
+        int players = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+        long pauseMillis = args.length > 2 ? Long.parseLong(args[2]) : 50;
+
+        Map<String, ManagedChannel> channels = new LinkedHashMap<>();
+        Map<String, Integer> picked = new LinkedHashMap<>();
+        List<StreamObserver<ConnectRequest>> connections = new ArrayList<>();
+
+        try (LeastLoadedBalancer balancer = new LeastLoadedBalancer(servers)) {
+            balancer.awaitReports(2, TimeUnit.SECONDS);
+            for (int i = 0; i < players; i++) {
+                String address = balancer.pick();
+                picked.merge(address, 1, Integer::sum);
+                ManagedChannel channel = channels.computeIfAbsent(address,
+                        a -> ManagedChannelBuilder.forTarget(a).usePlaintext().build());
+                StreamObserver<ConnectRequest> requests = Connect6GameGrpc.newStub(channel)
+                        .connectPlayer(new StreamObserver<ConnectResponse>() {
+                            @Override
+                            public void onNext(ConnectResponse response) {
+                            }
+
+                            @Override
+                            public void onError(Throwable t) {
+                                System.err.println("Ошибка подключения к " + address + ": " + t.getMessage());
+                            }
+
+                            @Override
+                            public void onCompleted() {
+                            }
+                        });
+                requests.onNext(ConnectRequest.newBuilder().setPlayerName("probe-" + i).build());
+                connections.add(requests);
+                Thread.sleep(pauseMillis);
+            }
+
+            Thread.sleep(1000);
+            for (String address : servers) {
+                System.out.println(address + ": подключено " + picked.getOrDefault(address, 0) +
+                        ", нагрузка " + balancer.getReport(address));
+            }
+        } finally {
+            for (StreamObserver<ConnectRequest> requests : connections) {
+                requests.onCompleted();
+            }
+            for (ManagedChannel channel : channels.values()) {
+                channel.shutdownNow();
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.connect6.client;
+
+import com.connect6.grpc.Connect6GameGrpc;
+import com.connect6.grpc.LoadReport;
+import com.connect6.grpc.LoadRequest;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.stub.StreamObserver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Выбор наименее загруженного сервера из статического списка для новых ConnectPlayer.
+ * Состояние игры живет на одном сервере, поэтому сервер выбирается один раз на игру,
+ * а не на каждый вызов: MakeMove и GetGameUpdates идут туда же, куда ушел ConnectPlayer.
+ */
+public class LeastLoadedBalancer implements AutoCloseable {
+    private static final int REPORT_INTERVAL_MILLIS = 500;
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+
+    private final List<Backend> backends = new ArrayList<>();
+    private final CountDownLatch firstReport;
+    private final ScheduledExecutorService reconnects = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "connect6-balancer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean closed;
+    private int nextFallback;
+
+    public LeastLoadedBalancer(List<String> addresses) {
+        if (addresses.isEmpty()) {
+            throw new IllegalArgumentException("Список серверов пуст");
+        }
+        firstReport = new CountDownLatch(addresses.size());
+        for (String address : addresses) {
+            Backend backend = new Backend(address);
+            backends.add(backend);
+            watch(backend);
+        }
+    }
+
+    /**
+     * Ждет первых отчетов от всех серверов (или истечения таймаута), чтобы
+     * первый выбор не делался вслепую.
+     */
+    public void awaitReports(long timeout, TimeUnit unit) throws InterruptedException {
+        firstReport.await(timeout, unit);
+    }
+
+    /**
+     * Адрес сервера с наименьшей нагрузкой. Без отчетов ни от одного сервера -
+     * по кругу. Каждый выбор учитывается до следующего отчета, чтобы серия
+     * подключений не ушла целиком на один сервер.
+     */
+    public synchronized String pick() {
+        Backend best = null;
+        for (Backend backend : backends) {
+            if (backend.report == null || backend.report.getDraining()) {
+                continue;
+            }
+            if (best == null || compare(backend, best) < 0) {
+                best = backend;
+            }
+        }
+        if (best == null) {
+            best = backends.get(nextFallback++ % backends.size());
+        }
+        best.picksSinceReport++;
+        return best.address;
+    }
+
+    public synchronized LoadReport getReport(String address) {
+        for (Backend backend : backends) {
+            if (backend.address.equals(address)) {
+                return backend.report;
+            }
+        }
+        return null;
+    }
+
+    private static int compare(Backend a, Backend b) {
+        int byPlayers = Integer.compare(a.players(), b.players());
+        if (byPlayers != 0) {
+            return byPlayers;
+        }
+        return Double.compare(a.report.getCpuUtilization(), b.report.getCpuUtilization());
+    }
+
+    private void watch(Backend backend) {
+        if (closed) {
+            return;
+        }
+        LoadRequest request = LoadRequest.newBuilder()
+                .setIntervalMillis(REPORT_INTERVAL_MILLIS)
+                .build();
+        Connect6GameGrpc.newStub(backend.channel).watchLoad(request, new StreamObserver<LoadReport>() {
+            @Override
+            public void onNext(LoadReport report) {
+                synchronized (LeastLoadedBalancer.this) {
+                    answered(backend);
+                    backend.report = report;
+                    backend.picksSinceReport = 0;
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                lost(backend);
+            }
+
+            @Override
+            public void onCompleted() {
+                lost(backend);
+            }
+        });
+    }
+
+    private void lost(Backend backend) {
+        synchronized (this) {
+            answered(backend);
+            // Недоступный сервер не участвует в выборе, пока не пришлет новый отчет
+            backend.report = null;
+        }
+        if (!closed) {
+            reconnects.schedule(() -> watch(backend), RECONNECT_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void answered(Backend backend) {
+        if (!backend.answered) {
+            backend.answered = true;
+            firstReport.countDown();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        reconnects.shutdownNow();
+        for (Backend backend : backends) {
+            backend.channel.shutdownNow();
+        }
+    }
+
+    private static class Backend {
+        final String address;
+        final ManagedChannel channel;
+        LoadReport report;
+        int picksSinceReport;
+        boolean answered;
+
+        Backend(String address) {
+            this.address = address;
+            this.channel = ManagedChannelBuilder.forTarget(address)
+                    .usePlaintext()
+                    .build();
+        }
+
+        int players() {
+            return 2 * report.getActiveGames() + report.getWaitingPlayers() + picksSinceReport;
+        }
+    }
+}
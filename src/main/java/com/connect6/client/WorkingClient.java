@@ -1,6 +1,9 @@
 package com.connect6.client;
 
 import com.connect6.grpc.*;
+import com.connect6.rules.BoardCodec;
+import com.connect6.rules.GameBoard;
+import com.connect6.rules.MoveCheck;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
 import io.grpc.stub.StreamObserver;
@@ -8,10 +11,21 @@ import io.grpc.stub.StreamObserver;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 public class WorkingClient extends JFrame {
+    private static final String DEFAULT_SERVER = "localhost:8080";
+    private static final long BALANCER_WAIT_MILLIS = 2000;
+
+    private final List<String> servers;
+    // Размер доски, в комнату которого игрок просится при подключении
+    private final int requestedBoardSize;
+    private String serverAddress;
     private ManagedChannel channel;
+    // Обновления со старого сервера после перенаправления игнорируются
+    private int updatesGeneration;
     private Connect6GameGrpc.Connect6GameStub asyncStub;
     private Connect6GameGrpc.Connect6GameBlockingStub blockingStub;
 
@@ -26,22 +40,22 @@ public class WorkingClient extends JFrame {
     private int previewX1 = -1, previewY1 = -1;
     private boolean showingPreview = false;
     private boolean selectingFirst = true;
-    private boolean isFirstMoveOfGame = true;
-
-    private StoneColor[][] board = new StoneColor[19][19];
 
-    public WorkingClient() {
-        initializeBoard();
+    // Доска с уже показанным, но еще не подтвержденным ходом и доска, подтвержденная сервером
+    private GameBoard board;
+    private GameBoard confirmedBoard;
+    private int[] pendingMove;
+    // Ходы соперника, пришедшие раньше ответа на наш ход, применяются после него
+    private final List<GameUpdate> deferredUpdates = new ArrayList<>();
+
+    public WorkingClient(List<String> servers, int boardSize) {
+        this.servers = servers;
+        this.requestedBoardSize = boardSize;
+        this.serverAddress = servers.get(0);
+        this.board = new GameBoard(boardSize);
+        this.confirmedBoard = new GameBoard(boardSize);
         initializeGUI();
-        connectToServer();
-    }
-
-    private void initializeBoard() {
-        for (int i = 0; i < 19; i++) {
-            for (int j = 0; j < 19; j++) {
-                board[i][j] = StoneColor.EMPTY;
-            }
-        }
+        connectToServer(null);
     }
 
     private void initializeGUI() {
@@ -50,7 +64,7 @@ public class WorkingClient extends JFrame {
         setLayout(new BorderLayout());
 
         gamePanel = new GamePanel();
-        add(gamePanel, BorderLayout.CENTER);
+        add(new JScrollPane(gamePanel), BorderLayout.CENTER);
 
         statusLabel = new JLabel("Подключение к серверу Connect6...");
         statusLabel.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
@@ -62,20 +76,19 @@ public class WorkingClient extends JFrame {
         setVisible(true);
     }
 
-    private void connectToServer() {
+    /** Подключается к redirect, если сервер перенаправил, иначе к наименее нагруженному из списка. */
+    private void connectToServer(String redirect) {
         statusLabel.setText("Подключение к серверу...");
 
         new Thread(() -> {
             try {
-                channel = ManagedChannelBuilder.forAddress("localhost", 8080)
-                        .usePlaintext()
-                        .keepAliveTime(30, TimeUnit.SECONDS)
-                        .keepAliveTimeout(5, TimeUnit.SECONDS)
-                        .keepAliveWithoutCalls(true)
-                        .build();
-
-                asyncStub = Connect6GameGrpc.newStub(channel);
-                blockingStub = Connect6GameGrpc.newBlockingStub(channel);
+                // Перенаправление важнее балансировки: старый сервер знает, куда ушли его игроки
+                if (redirect != null) {
+                    serverAddress = redirect;
+                } else if (servers.size() > 1) {
+                    serverAddress = pickServer();
+                }
+                openChannel(serverAddress);
 
                 StreamObserver<ConnectRequest> requestObserver =
                         asyncStub.connectPlayer(new StreamObserver<ConnectResponse>() {
@@ -104,6 +117,7 @@ public class WorkingClient extends JFrame {
 
                 ConnectRequest request = ConnectRequest.newBuilder()
                         .setPlayerName("Игрок")
+                        .setBoardSize(requestedBoardSize)
                         .build();
 
                 requestObserver.onNext(request);
@@ -120,7 +134,40 @@ public class WorkingClient extends JFrame {
         }).start();
     }
 
+    private String pickServer() throws InterruptedException {
+        try (LeastLoadedBalancer balancer = new LeastLoadedBalancer(servers)) {
+            balancer.awaitReports(BALANCER_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            String address = balancer.pick();
+            System.out.println("Выбран сервер " + address + ", нагрузка: " + balancer.getReport(address));
+            return address;
+        }
+    }
+
+    private void openChannel(String address) {
+        ManagedChannel previous = channel;
+        serverAddress = address;
+        channel = ManagedChannelBuilder.forTarget(address)
+                .usePlaintext()
+                .keepAliveTime(30, TimeUnit.SECONDS)
+                .keepAliveTimeout(5, TimeUnit.SECONDS)
+                .keepAliveWithoutCalls(true)
+                .build();
+
+        asyncStub = Connect6GameGrpc.newStub(channel);
+        blockingStub = Connect6GameGrpc.newBlockingStub(channel);
+
+        if (previous != null) {
+            previous.shutdown();
+        }
+    }
+
     private void handleConnectResponse(ConnectResponse response) {
+        if (!response.getRedirectAddress().isEmpty()) {
+            statusLabel.setText(response.getMessage());
+            connectToServer(response.getRedirectAddress());
+            return;
+        }
+
         playerId = response.getPlayerId();
         myColor = response.getColor();
 
@@ -129,6 +176,19 @@ public class WorkingClient extends JFrame {
         if (myColor != StoneColor.EMPTY) {
             gameStarted = true;
 
+            int boardSize = response.getBoardSize() > 0 ? response.getBoardSize() : GameBoard.DEFAULT_BOARD_SIZE;
+            if (boardSize > GameBoard.MAX_BOARD_SIZE) {
+                statusLabel.setText("Сервер предложил слишком большую доску: " + boardSize);
+                gameStarted = false;
+                return;
+            }
+            if (boardSize != board.getBoardSize()) {
+                board = new GameBoard(boardSize);
+                confirmedBoard = new GameBoard(boardSize);
+                gamePanel.updateBoardSize();
+                pack();
+            }
+
             if (myColor == StoneColor.BLACK) {
                 myTurn = true;
             }
@@ -142,23 +202,32 @@ public class WorkingClient extends JFrame {
                 .setPlayerId(playerId)
                 .build();
 
+        int generation = ++updatesGeneration;
         asyncStub.getGameUpdates(request, new StreamObserver<GameUpdate>() {
             @Override
             public void onNext(GameUpdate update) {
-                SwingUtilities.invokeLater(() -> handleGameUpdate(update));
+                SwingUtilities.invokeLater(() -> {
+                    if (generation == updatesGeneration) {
+                        handleGameUpdate(update);
+                    }
+                });
             }
 
             @Override
             public void onError(Throwable t) {
                 SwingUtilities.invokeLater(() -> {
-                    statusLabel.setText("Ошибка получения обновлений: " + t.getMessage());
+                    if (generation == updatesGeneration) {
+                        statusLabel.setText("Ошибка получения обновлений: " + t.getMessage());
+                    }
                 });
             }
 
             @Override
             public void onCompleted() {
                 SwingUtilities.invokeLater(() -> {
-                    statusLabel.setText("Игра завершена");
+                    if (generation == updatesGeneration) {
+                        statusLabel.setText("Игра завершена");
+                    }
                 });
             }
         });
@@ -176,12 +245,20 @@ public class WorkingClient extends JFrame {
                 }
 
                 if (update.getPlayerId() != playerId) {
+                    if (pendingMove != null) {
+                        deferredUpdates.add(update);
+                        return;
+                    }
+
                     Position pos1 = update.getPosition1();
                     Position pos2 = update.getPosition2();
 
-                    board[pos1.getX()][pos1.getY()] = update.getColor();
-                    if (pos2.getX() != -1 && pos2.getY() != -1) {
-                        board[pos2.getX()][pos2.getY()] = update.getColor();
+                    boolean applied = confirmedBoard.placeStones(pos1.getX(), pos1.getY(),
+                            pos2.getX(), pos2.getY(), update.getColor());
+                    board.placeStones(pos1.getX(), pos1.getY(), pos2.getX(), pos2.getY(), update.getColor());
+                    if (!applied) {
+                        System.err.println("Ход соперника не согласуется с локальной доской");
+                        resyncBoard();
                     }
                     gamePanel.repaint();
                     gamePanel.clearPreview();
@@ -189,9 +266,8 @@ public class WorkingClient extends JFrame {
                     if (update.getColor() != myColor) {
                         myTurn = true;
 
-                        if (isFirstMoveOfGame && myColor == StoneColor.WHITE) {
+                        if (myColor == StoneColor.WHITE && confirmedBoard.getStoneCount() == 1) {
                             statusLabel.setText("Ваш ход (первый ход белых)");
-                            isFirstMoveOfGame = false;
                         } else {
                             statusLabel.setText("Ваш ход");
                         }
@@ -221,6 +297,12 @@ public class WorkingClient extends JFrame {
                 new Timer(3000, e -> disconnect()).start();
                 break;
 
+            case REDIRECT:
+                openChannel(update.getRedirectAddress());
+                subscribeToGameUpdates();
+                resyncBoard();
+                break;
+
             case ERROR:
                 if (!gameStarted) {
                     return;
@@ -256,6 +338,12 @@ public class WorkingClient extends JFrame {
     private void sendMove(int x1, int y1, int x2, int y2) {
         if (!gameStarted || !myTurn) return;
 
+        // Ход уже проверен общими правилами, поэтому показываем его сразу;
+        // сервер остается авторитетным и при расхождении ход откатывается
+        board.placeStones(x1, y1, x2, y2, myColor);
+        pendingMove = new int[]{x1, y1, x2, y2};
+        gamePanel.repaint();
+
         Position pos1 = Position.newBuilder()
                 .setX(x1)
                 .setY(y1)
@@ -275,29 +363,44 @@ public class WorkingClient extends JFrame {
         new Thread(() -> {
             try {
                 MoveResponse response = blockingStub.makeMove(request);
+                if (!response.getRedirectAddress().isEmpty()) {
+                    // Игра переехала на другой сервер - повторяем ход там
+                    String address = response.getRedirectAddress();
+                    SwingUtilities.invokeAndWait(() -> {
+                        if (!address.equals(serverAddress)) {
+                            openChannel(address);
+                            subscribeToGameUpdates();
+                        }
+                    });
+                    response = blockingStub.makeMove(request);
+                }
+                MoveResponse result = response;
 
                 SwingUtilities.invokeLater(() -> {
-                    if (response.getSuccess()) {
-                        board[x1][y1] = myColor;
-                        if (x2 != -1 && y2 != -1) {
-                            board[x2][y2] = myColor;
-                        }
+                    if (result.getSuccess()) {
+                        confirmedBoard.placeStones(x1, y1, x2, y2, myColor);
+                        pendingMove = null;
 
                         myTurn = false;
                         statusLabel.setText("Ход противника");
                         gamePanel.clearPreview();
                         gamePanel.repaint();
+                        applyDeferredUpdates();
                     } else {
-                        statusLabel.setText("Ошибка хода: " + response.getMessage());
+                        rollbackMove();
+                        statusLabel.setText("Ошибка хода: " + result.getMessage());
                         myTurn = true;
+                        // Локальная проверка пропустила ход, значит доска могла разойтись с серверной
+                        resyncBoard();
                         JOptionPane.showMessageDialog(WorkingClient.this,
-                                response.getMessage(),
+                                result.getMessage(),
                                 "Ошибка хода", JOptionPane.ERROR_MESSAGE);
                     }
                 });
 
             } catch (Exception e) {
                 SwingUtilities.invokeLater(() -> {
+                    rollbackMove();
                     statusLabel.setText("Ошибка отправки хода: " + e.getMessage());
                     myTurn = true;
                 });
@@ -305,12 +408,73 @@ public class WorkingClient extends JFrame {
         }).start();
     }
 
-    class GamePanel extends JPanel {
+    // Доска сервера целиком: после пропущенных обновлений или расхождения с сервером
+    private void resyncBoard() {
+        int player = playerId;
+        Connect6GameGrpc.Connect6GameBlockingStub stub = blockingStub;
+        new Thread(() -> {
+            try {
+                BoardState state = stub.getBoardState(BoardStateRequest.newBuilder()
+                        .setPlayerId(player)
+                        .build());
+                SwingUtilities.invokeLater(() -> applyBoardState(state));
+            } catch (Exception e) {
+                System.err.println("Не удалось получить доску с сервера: " + e.getMessage());
+            }
+        }).start();
+    }
+
+    private void applyBoardState(BoardState state) {
+        // Ответ на наш ход еще не пришел: после него доска будет запрошена заново, если понадобится
+        if (pendingMove != null || !gameStarted) {
+            return;
+        }
+
+        GameBoard restored = state.getCellsCase() == BoardState.CellsCase.MOVE_LIST ?
+                BoardCodec.decodeMoves(state.getBoardSize(), state.getMoveList().toByteArray()) :
+                BoardCodec.decodeCells(state.getBoardSize(), state.getPackedCells().toByteArray());
+        boolean resized = restored.getBoardSize() != board.getBoardSize();
+        confirmedBoard = restored;
+        board = restored.copy();
+        deferredUpdates.clear();
+        if (resized) {
+            gamePanel.updateBoardSize();
+            pack();
+        }
+
+        if (!state.getFinished()) {
+            myTurn = state.getTurn() == myColor;
+            statusLabel.setText(myTurn ? "Ваш ход" : "Ход противника");
+        }
+        gamePanel.clearPreview();
+        gamePanel.repaint();
+    }
+
+    private void rollbackMove() {
+        board = confirmedBoard.copy();
+        pendingMove = null;
+        gamePanel.clearPreview();
+        applyDeferredUpdates();
+    }
+
+    private void applyDeferredUpdates() {
+        List<GameUpdate> updates = new ArrayList<>(deferredUpdates);
+        deferredUpdates.clear();
+        for (GameUpdate update : updates) {
+            handleGameUpdate(update);
+        }
+    }
+
+    class GamePanel extends JPanel implements Scrollable {
         private static final int CELL_SIZE = 30;
-        private static final int BOARD_SIZE = 19;
+        private static final int MIN_CELL_SIZE = 8;
+        // Большие доски уменьшаются до этого размера, а что не поместилось - прокручивается
+        private static final int MAX_VIEW_SIZE = 800;
+
+        private int cellSize;
 
         public GamePanel() {
-            setPreferredSize(new Dimension(BOARD_SIZE * CELL_SIZE, BOARD_SIZE * CELL_SIZE));
+            updateCellSize();
 
             addMouseListener(new MouseAdapter() {
                 @Override
@@ -321,33 +485,34 @@ public class WorkingClient extends JFrame {
                         return;
                     }
 
-                    int x = e.getX() / CELL_SIZE;
-                    int y = e.getY() / CELL_SIZE;
+                    int x = e.getX() / cellSize;
+                    int y = e.getY() / cellSize;
 
-                    if (x < 0 || x >= BOARD_SIZE || y < 0 || y >= BOARD_SIZE) {
+                    if (!board.isValidPosition(x, y)) {
                         JOptionPane.showMessageDialog(WorkingClient.this,
                                 "Координаты вне доски!", "Ошибка", JOptionPane.ERROR_MESSAGE);
                         return;
                     }
 
-                    if (board[x][y] != StoneColor.EMPTY) {
+                    if (board.getStone(x, y) != StoneColor.EMPTY) {
                         JOptionPane.showMessageDialog(WorkingClient.this,
                                 "Эта клетка уже занята!", "Ошибка", JOptionPane.ERROR_MESSAGE);
                         return;
                     }
 
-                    if (isFirstMoveOfGame && myColor == StoneColor.BLACK) {
-                        if (x == 9 && y == 9) {
+                    if (board.isFirstMove() && myColor == StoneColor.BLACK) {
+                        MoveCheck check = board.checkMove(x, y, -1, -1, myColor);
+                        if (check == MoveCheck.OK) {
                             showingPreview = false;
                             repaint();
 
                             sendMove(x, y, -1, -1);
                             myTurn = false;
-                            isFirstMoveOfGame = false;
                             statusLabel.setText("Ход противника");
                         } else {
+                            int center = board.getCenter();
                             JOptionPane.showMessageDialog(WorkingClient.this,
-                                    "Первый ход черных должен быть в центр доски (9,9)!",
+                                    check.getMessage() + " (" + center + "," + center + ")!",
                                     "Первый ход", JOptionPane.INFORMATION_MESSAGE);
                         }
                         return;
@@ -359,7 +524,7 @@ public class WorkingClient extends JFrame {
                         selectingFirst = false;
                         showingPreview = true;
 
-                        if (isFirstMoveOfGame && myColor == StoneColor.WHITE) {
+                        if (myColor == StoneColor.WHITE && board.getStoneCount() == 1) {
                             statusLabel.setText("Выберите вторую позицию (первый ход белых)");
                         } else {
                             statusLabel.setText("Выберите вторую позицию");
@@ -367,9 +532,10 @@ public class WorkingClient extends JFrame {
 
                         repaint();
                     } else {
-                        if (x == previewX1 && y == previewY1) {
+                        MoveCheck check = board.checkMove(previewX1, previewY1, x, y, myColor);
+                        if (check != MoveCheck.OK) {
                             JOptionPane.showMessageDialog(WorkingClient.this,
-                                    "Нельзя выбрать ту же клетку для второго камня!",
+                                    check.getMessage() + "!",
                                     "Ошибка", JOptionPane.ERROR_MESSAGE);
                             return;
                         }
@@ -379,9 +545,6 @@ public class WorkingClient extends JFrame {
 
                         sendMove(previewX1, previewY1, x, y);
                         selectingFirst = true;
-                        if (isFirstMoveOfGame) {
-                            isFirstMoveOfGame = false;
-                        }
                         myTurn = false;
                         statusLabel.setText("Ход противника");
                     }
@@ -389,6 +552,44 @@ public class WorkingClient extends JFrame {
             });
         }
 
+        public void updateBoardSize() {
+            updateCellSize();
+            revalidate();
+            repaint();
+        }
+
+        private void updateCellSize() {
+            int size = board.getBoardSize();
+            cellSize = Math.max(MIN_CELL_SIZE, Math.min(CELL_SIZE, MAX_VIEW_SIZE / size));
+            setPreferredSize(new Dimension(size * cellSize, size * cellSize));
+        }
+
+        @Override
+        public Dimension getPreferredScrollableViewportSize() {
+            Dimension preferred = getPreferredSize();
+            return new Dimension(Math.min(preferred.width, MAX_VIEW_SIZE), Math.min(preferred.height, MAX_VIEW_SIZE));
+        }
+
+        @Override
+        public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+            return cellSize;
+        }
+
+        @Override
+        public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+            return orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+        }
+
+        @Override
+        public boolean getScrollableTracksViewportWidth() {
+            return false;
+        }
+
+        @Override
+        public boolean getScrollableTracksViewportHeight() {
+            return false;
+        }
+
         @Override
         protected void paintComponent(Graphics g) {
             super.paintComponent(g);
@@ -401,8 +602,8 @@ public class WorkingClient extends JFrame {
                 g2d.setColor(Color.GRAY);
 
                 if (previewX1 != -1 && previewY1 != -1) {
-                    g2d.fillOval(previewX1 * CELL_SIZE + 2, previewY1 * CELL_SIZE + 2,
-                            CELL_SIZE - 4, CELL_SIZE - 4);
+                    g2d.fillOval(previewX1 * cellSize + 2, previewY1 * cellSize + 2,
+                            cellSize - 4, cellSize - 4);
                 }
 
                 g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 1.0f));
@@ -413,29 +614,42 @@ public class WorkingClient extends JFrame {
             g.setColor(new Color(220, 179, 92));
             g.fillRect(0, 0, getWidth(), getHeight());
 
+            int size = board.getBoardSize();
+            int half = cellSize / 2;
+            int end = (size - 1) * cellSize + half;
+            // Рисуем только видимые линии: в прокрутке большой доски видна малая часть
+            Rectangle clip = g.getClipBounds();
+            if (clip == null) {
+                clip = new Rectangle(0, 0, getWidth(), getHeight());
+            }
             g.setColor(Color.BLACK);
-            for (int i = 0; i < BOARD_SIZE; i++) {
-                g.drawLine(CELL_SIZE / 2, i * CELL_SIZE + CELL_SIZE / 2,
-                        (BOARD_SIZE - 1) * CELL_SIZE + CELL_SIZE / 2,
-                        i * CELL_SIZE + CELL_SIZE / 2);
-                g.drawLine(i * CELL_SIZE + CELL_SIZE / 2, CELL_SIZE / 2,
-                        i * CELL_SIZE + CELL_SIZE / 2,
-                        (BOARD_SIZE - 1) * CELL_SIZE + CELL_SIZE / 2);
+            for (int i = visibleFrom(clip.y); i <= visibleTo(clip.y + clip.height, size); i++) {
+                g.drawLine(half, i * cellSize + half, end, i * cellSize + half);
+            }
+            for (int i = visibleFrom(clip.x); i <= visibleTo(clip.x + clip.width, size); i++) {
+                g.drawLine(i * cellSize + half, half, i * cellSize + half, end);
             }
         }
 
+        private int visibleFrom(int pixel) {
+            return Math.max(0, pixel / cellSize);
+        }
+
+        private int visibleTo(int pixel, int size) {
+            return Math.min(size - 1, pixel / cellSize);
+        }
+
         private void drawStones(Graphics g) {
-            for (int i = 0; i < BOARD_SIZE; i++) {
-                for (int j = 0; j < BOARD_SIZE; j++) {
-                    if (board[i][j] != StoneColor.EMPTY) {
-                        g.setColor(board[i][j] == StoneColor.BLACK ? Color.BLACK : Color.WHITE);
-                        g.fillOval(i * CELL_SIZE + 2, j * CELL_SIZE + 2,
-                                CELL_SIZE - 4, CELL_SIZE - 4);
-                        g.setColor(Color.GRAY);
-                        g.drawOval(i * CELL_SIZE + 2, j * CELL_SIZE + 2,
-                                CELL_SIZE - 4, CELL_SIZE - 4);
-                    }
-                }
+            // Обходим только поставленные камни - на больших досках почти все клетки пусты
+            for (int k = 0; k < board.getStoneCount(); k++) {
+                int i = board.getMoveX(k);
+                int j = board.getMoveY(k);
+                g.setColor(board.getMoveColor(k) == StoneColor.BLACK ? Color.BLACK : Color.WHITE);
+                g.fillOval(i * cellSize + 2, j * cellSize + 2,
+                        cellSize - 4, cellSize - 4);
+                g.setColor(Color.GRAY);
+                g.drawOval(i * cellSize + 2, j * cellSize + 2,
+                        cellSize - 4, cellSize - 4);
             }
         }
 
@@ -448,8 +662,30 @@ public class WorkingClient extends JFrame {
     }
 
     public static void main(String[] args) {
+        // Список серверов через запятую: host1:8080,host2:8081
+        List<String> servers = new ArrayList<>();
+        for (String address : (args.length > 0 ? args[0] : DEFAULT_SERVER).split(",")) {
+            if (!address.isBlank()) {
+                servers.add(address.trim());
+            }
+        }
+        int boardSize = GameBoard.DEFAULT_BOARD_SIZE;
+        if (args.length > 1) {
+            try {
+                boardSize = Integer.parseInt(args[1].trim());
+            } catch (NumberFormatException e) {
+                boardSize = -1;
+            }
+        }
+        if (boardSize < GameBoard.MIN_BOARD_SIZE || boardSize > GameBoard.MAX_BOARD_SIZE) {
+            System.err.println("Использование: WorkingClient [серверы] [размер доски]");
+            System.err.println("Размер доски должен быть от " + GameBoard.MIN_BOARD_SIZE +
+                    " до " + GameBoard.MAX_BOARD_SIZE + ": " + args[1]);
+            System.exit(2);
+        }
+        int size = boardSize;
         SwingUtilities.invokeLater(() -> {
-            new WorkingClient();
+            new WorkingClient(servers, size);
         });
     }
 }
\ No newline at end of file
@@ -0,0 +1,89 @@
+package com.connect6.rules;
+
+import com.connect6.grpc.StoneColor;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Компактные представления доски для BoardState: 2 бита на клетку или список
+ * номеров клеток x * size + y в порядке ходов (varint). Список короче на
+ * малозаполненных досках, упаковка - на плотных.
+ */
+public final class BoardCodec {
+    private BoardCodec() {
+    }
+
+    /** Размер упаковки 2 бита на клетку в байтах. */
+    public static long packedLength(int boardSize) {
+        return ((long) boardSize * boardSize + 3) / 4;
+    }
+
+    public static byte[] packCells(GameBoard board) {
+        long length = packedLength(board.getBoardSize());
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Доска слишком велика для упаковки");
+        }
+        byte[] packed = new byte[(int) length];
+        long size = board.getBoardSize();
+        for (int i = 0; i < board.getStoneCount(); i++) {
+            long cell = board.getMoveX(i) * size + board.getMoveY(i);
+            int color = board.getMoveColor(i).getNumber();
+            packed[(int) (cell >> 2)] |= (byte) (color << ((cell & 3) * 2));
+        }
+        return packed;
+    }
+
+    public static byte[] encodeMoves(GameBoard board) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(board.getStoneCount() * 2);
+        long size = board.getBoardSize();
+        for (int i = 0; i < board.getStoneCount(); i++) {
+            long value = board.getMoveX(i) * size + board.getMoveY(i);
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+        return out.toByteArray();
+    }
+
+    /** Доска с полной историей ходов: цвета восстанавливаются по порядку камней. */
+    public static GameBoard decodeMoves(int boardSize, byte[] moves) {
+        GameBoard board = new GameBoard(boardSize);
+        long value = 0;
+        int shift = 0;
+        for (byte b : moves) {
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) != 0) {
+                shift += 7;
+                if (shift >= 64) {
+                    throw new IllegalArgumentException("Некорректный varint в списке ходов");
+                }
+                continue;
+            }
+            board.replayStone((int) (value / boardSize), (int) (value % boardSize));
+            value = 0;
+            shift = 0;
+        }
+        if (shift != 0) {
+            throw new IllegalArgumentException("Список ходов обрывается посреди varint");
+        }
+        return board;
+    }
+
+    /** Доска по упакованным клеткам; порядок ходов не сохраняется, камни идут по строкам. */
+    public static GameBoard decodeCells(int boardSize, byte[] packed) {
+        if (packed.length != packedLength(boardSize)) {
+            throw new IllegalArgumentException("Размер упаковки не соответствует доске " + boardSize);
+        }
+        GameBoard board = new GameBoard(boardSize);
+        long cells = (long) boardSize * boardSize;
+        for (long cell = 0; cell < cells; cell++) {
+            int color = (packed[(int) (cell >> 2)] >> ((cell & 3) * 2)) & 3;
+            if (color != StoneColor.EMPTY.getNumber()) {
+                board.restoreStone((int) (cell / boardSize), (int) (cell % boardSize), StoneColor.forNumber(color));
+            }
+        }
+        return board;
+    }
+}
@@ -0,0 +1,257 @@
+package com.connect6.rules;
+import com.connect6.grpc.StoneColor;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Доска и правила Connect6. Используется и сервером, где она авторитетна,
+ * и клиентом для мгновенной проверки ходов без обращения к серверу.
+ */
+public class GameBoard {
+    public static final int DEFAULT_BOARD_SIZE = 19;
+    public static final int MIN_BOARD_SIZE = 6;
+    // Больше не принимается ни сервером, ни клиентом: доска рисуется целиком, а упаковка - один массив
+    public static final int MAX_BOARD_SIZE = 1024;
+    // Доски больше этого размера хранятся в хеш-таблице, а не в массиве
+    public static final int SPARSE_THRESHOLD = 64;
+    private static final int WIN_LENGTH = 6;
+
+    private final int boardSize;
+    private final BoardStorage board;
+    private boolean firstMove;
+    private StoneColor winner = StoneColor.EMPTY;
+    private int stoneCount;
+    // История ходов: пары (x, y) в порядке постановки камней
+    private int[] moves = new int[32];
+
+    public GameBoard() {
+        this(DEFAULT_BOARD_SIZE);
+    }
+
+    public GameBoard(int boardSize) {
+        if (boardSize < MIN_BOARD_SIZE || boardSize > MAX_BOARD_SIZE) {
+            throw new IllegalArgumentException("Размер доски должен быть от " + MIN_BOARD_SIZE +
+                    " до " + MAX_BOARD_SIZE);
+        }
+        this.boardSize = boardSize;
+        this.board = boardSize > SPARSE_THRESHOLD ?
+                new SparseBoardStorage() : new DenseBoardStorage(boardSize);
+        firstMove = true;
+    }
+
+    /**
+     * Проверяет ход по правилам, не меняя доску.
+     * Второй камень первого хода черных передается как (-1, -1).
+     */
+    public MoveCheck checkMove(int x1, int y1, int x2, int y2, StoneColor color) {
+        if (firstMove && color == StoneColor.BLACK) {
+            if (x2 != -1 || y2 != -1) {
+                return MoveCheck.FIRST_MOVE_SINGLE_STONE;
+            }
+            int center = getCenter();
+            if (!isValidPosition(x1, y1) || x1 != center || y1 != center) {
+                return MoveCheck.FIRST_MOVE_NOT_IN_CENTER;
+            }
+            if (board.get(x1, y1) != StoneColor.EMPTY) {
+                return MoveCheck.OCCUPIED;
+            }
+            return MoveCheck.OK;
+        }
+
+        if (x1 == -1 || y1 == -1 || x2 == -1 || y2 == -1) {
+            return MoveCheck.MISSING_STONE;
+        }
+        if (!isValidPosition(x1, y1) || !isValidPosition(x2, y2)) {
+            return MoveCheck.OUT_OF_BOARD;
+        }
+        if (board.get(x1, y1) != StoneColor.EMPTY || board.get(x2, y2) != StoneColor.EMPTY) {
+            return MoveCheck.OCCUPIED;
+        }
+        if (x1 == x2 && y1 == y2) {
+            return MoveCheck.SAME_CELL;
+        }
+        return MoveCheck.OK;
+    }
+
+    public boolean placeStones(int x1, int y1, int x2, int y2, StoneColor color) {
+        if (checkMove(x1, y1, x2, y2, color) != MoveCheck.OK) {
+            return false;
+        }
+
+        placeStone(x1, y1, color);
+        if (x2 != -1 || y2 != -1) {
+            placeStone(x2, y2, color);
+        }
+        firstMove = false;
+        return true;
+    }
+
+    /**
+     * Ставит следующий камень из сохраненной истории ходов без проверки правил.
+     * Цвет определяется порядковым номером камня.
+     */
+    public void replayStone(int x, int y) {
+        placeStone(x, y, colorOfMove(stoneCount));
+        firstMove = false;
+    }
+
+    // Камень заданного цвета вне очередности: доска из снимка без истории ходов
+    void restoreStone(int x, int y, StoneColor color) {
+        placeStone(x, y, color);
+        firstMove = false;
+    }
+
+    // Первый камень черный, дальше каждый игрок ставит по два камня
+    public static StoneColor colorOfMove(int index) {
+        if (index == 0) return StoneColor.BLACK;
+        return ((index - 1) / 2) % 2 == 0 ? StoneColor.WHITE : StoneColor.BLACK;
+    }
+
+    // Выигрышная линия может появиться только через только что поставленный камень,
+    // поэтому проверяем лишь его окрестность, а не всю доску
+    private void placeStone(int x, int y, StoneColor color) {
+        board.set(x, y, color);
+        if (stoneCount * 2 == moves.length) {
+            moves = Arrays.copyOf(moves, moves.length * 2);
+        }
+        moves[stoneCount * 2] = x;
+        moves[stoneCount * 2 + 1] = y;
+        stoneCount++;
+        if (winner == StoneColor.EMPTY &&
+                (checkLine(x, y, 1, 0) ||
+                        checkLine(x, y, 0, 1) ||
+                        checkLine(x, y, 1, 1) ||
+                        checkLine(x, y, 1, -1))) {
+            winner = color;
+        }
+    }
+
+    public boolean isValidPosition(int x, int y) {
+        return x >= 0 && x < boardSize && y >= 0 && y < boardSize;
+    }
+
+    public StoneColor checkWinner() {
+        return winner;
+    }
+
+    private boolean checkLine(int x, int y, int dx, int dy) {
+        StoneColor color = board.get(x, y);
+        if (color == StoneColor.EMPTY) return false;
+
+        int count = 1;
+
+        for (int i = 1; i < WIN_LENGTH; i++) {
+            int newX = x + i * dx;
+            int newY = y + i * dy;
+            if (!isValidPosition(newX, newY) || board.get(newX, newY) != color) {
+                break;
+            }
+            count++;
+        }
+
+        for (int i = 1; i < WIN_LENGTH; i++) {
+            int newX = x - i * dx;
+            int newY = y - i * dy;
+            if (!isValidPosition(newX, newY) || board.get(newX, newY) != color) {
+                break;
+            }
+            count++;
+        }
+
+        return count >= WIN_LENGTH;
+    }
+
+    public StoneColor getStone(int x, int y) {
+        return isValidPosition(x, y) ? board.get(x, y) : StoneColor.EMPTY;
+    }
+
+    /** Очищает доску для новой партии без выделения новой памяти под клетки. */
+    public void clear() {
+        board.clear();
+        firstMove = true;
+        winner = StoneColor.EMPTY;
+        stoneCount = 0;
+    }
+
+    /** Независимая копия доски с той же историей ходов. */
+    public GameBoard copy() {
+        GameBoard copy = new GameBoard(boardSize);
+        for (int i = 0; i < stoneCount; i++) {
+            // Цвет берется с доски: у доски из упакованного снимка порядок камней не совпадает с очередностью
+            copy.restoreStone(getMoveX(i), getMoveY(i), getMoveColor(i));
+        }
+        copy.firstMove = firstMove;
+        return copy;
+    }
+
+    public int getMoveX(int index) { return moves[index * 2]; }
+    public int getMoveY(int index) { return moves[index * 2 + 1]; }
+    public StoneColor getMoveColor(int index) { return board.get(getMoveX(index), getMoveY(index)); }
+
+    public boolean isFirstMove() { return firstMove; }
+    public int getBoardSize() { return boardSize; }
+    public int getCenter() { return boardSize / 2; }
+    public int getStoneCount() { return stoneCount; }
+    public boolean isSparse() { return board instanceof SparseBoardStorage; }
+
+    private interface BoardStorage {
+        StoneColor get(int x, int y);
+        void set(int x, int y, StoneColor color);
+        void clear();
+    }
+
+    private static class DenseBoardStorage implements BoardStorage {
+        private final StoneColor[][] cells;
+
+        DenseBoardStorage(int size) {
+            cells = new StoneColor[size][size];
+            for (int i = 0; i < size; i++) {
+                for (int j = 0; j < size; j++) {
+                    cells[i][j] = StoneColor.EMPTY;
+                }
+            }
+        }
+
+        @Override
+        public StoneColor get(int x, int y) {
+            return cells[x][y];
+        }
+
+        @Override
+        public void set(int x, int y, StoneColor color) {
+            cells[x][y] = color;
+        }
+
+        @Override
+        public void clear() {
+            for (StoneColor[] row : cells) {
+                Arrays.fill(row, StoneColor.EMPTY);
+            }
+        }
+    }
+
+    private static class SparseBoardStorage implements BoardStorage {
+        private final Map<Long, StoneColor> cells = new HashMap<>();
+
+        private static long key(int x, int y) {
+            return ((long) x << 32) | (y & 0xFFFFFFFFL);
+        }
+
+        @Override
+        public StoneColor get(int x, int y) {
+            return cells.getOrDefault(key(x, y), StoneColor.EMPTY);
+        }
+
+        @Override
+        public void set(int x, int y, StoneColor color) {
+            cells.put(key(x, y), color);
+        }
+
+        @Override
+        public void clear() {
+            cells.clear();
+        }
+    }
+}
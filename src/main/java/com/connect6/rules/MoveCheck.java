@@ -0,0 +1,22 @@
+package com.connect6.rules;
+
+/** Результат проверки хода по правилам {@link GameBoard#checkMove}. */
+public enum MoveCheck {
+    OK("Ход допустим"),
+    FIRST_MOVE_SINGLE_STONE("Первый ход черных - только один камень"),
+    FIRST_MOVE_NOT_IN_CENTER("Первый ход черных должен быть в центр доски"),
+    MISSING_STONE("Нужно поставить два камня"),
+    OUT_OF_BOARD("Координаты вне доски"),
+    OCCUPIED("Эта клетка уже занята"),
+    SAME_CELL("Нельзя выбрать ту же клетку для второго камня");
+
+    private final String message;
+
+    MoveCheck(String message) {
+        this.message = message;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
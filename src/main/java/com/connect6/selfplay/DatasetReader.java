@@ -0,0 +1,94 @@
+package com.connect6.selfplay;
+
+import com.connect6.grpc.StoneColor;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Проверка файла самоигры: отображает блоки в память, сверяет доску каждой позиции
+ * с номером хода и печатает сводку.
+ *
+ * Аргументы: файл
+ */
+public class DatasetReader {
+    private static final int FIXED_BYTES_PER_POSITION = 4 + 2 + 2 + 1 + 1;
+
+    public static void main(String[] args) throws IOException {
+        Path path = Paths.get(args[0]);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, DatasetWriter.HEADER_BYTES);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt() != DatasetWriter.MAGIC || header.getInt() != DatasetWriter.VERSION) {
+                throw new IOException("Не файл самоигры: " + path);
+            }
+            int boardSize = header.getInt();
+            int boardBytes = header.getInt();
+
+            long offset = DatasetWriter.HEADER_BYTES;
+            long chunks = 0;
+            long positions = 0;
+            long games = 0;
+            long[] results = new long[3];
+            long mismatches = 0;
+            while (offset < channel.size()) {
+                MappedByteBuffer countBuffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, 4);
+                int count = countBuffer.order(ByteOrder.LITTLE_ENDIAN).getInt();
+                long length = (long) count * (FIXED_BYTES_PER_POSITION + boardBytes);
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, offset + 4, length);
+                chunk.order(ByteOrder.LITTLE_ENDIAN);
+
+                int plyOffset = 4 * count;
+                int toMoveOffset = plyOffset + 4 * count;
+                int resultOffset = toMoveOffset + count;
+                int boardOffset = resultOffset + count;
+                for (int i = 0; i < count; i++) {
+                    int ply = chunk.getShort(plyOffset + 2 * i);
+                    if (ply == 0) {
+                        games++;
+                        byte toMove = chunk.get(toMoveOffset + i);
+                        byte result = chunk.get(resultOffset + i);
+                        int winner = result == 0 ? StoneColor.EMPTY.getNumber() :
+                                result > 0 ? toMove : 3 - toMove;
+                        results[winner]++;
+                    }
+                    if (stones(chunk, boardOffset + i * boardBytes, boardBytes) != ply) {
+                        mismatches++;
+                    }
+                }
+
+                offset += 4 + length;
+                chunks++;
+                positions += count;
+            }
+
+            System.out.println("Доска " + boardSize + "x" + boardSize + ", блоков: " + chunks +
+                    ", позиций: " + positions + ", партий: " + games);
+            System.out.println("Победы черных: " + results[StoneColor.BLACK.getNumber()] +
+                    ", белых: " + results[StoneColor.WHITE.getNumber()] +
+                    ", ничьи: " + results[StoneColor.EMPTY.getNumber()]);
+            if (mismatches > 0) {
+                System.err.println("Позиций, где число камней не равно номеру хода: " + mismatches);
+                System.exit(1);
+            }
+        }
+    }
+
+    private static int stones(MappedByteBuffer chunk, int from, int length) {
+        int stones = 0;
+        for (int i = 0; i < length; i++) {
+            int packed = chunk.get(from + i) & 0xFF;
+            for (int shift = 0; shift < 8; shift += 2) {
+                if (((packed >> shift) & 3) != 0) {
+                    stones++;
+                }
+            }
+        }
+        return stones;
+    }
+}
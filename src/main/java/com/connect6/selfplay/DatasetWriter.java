@@ -0,0 +1,171 @@
+package com.connect6.selfplay;
+
+import com.connect6.grpc.StoneColor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Колоночный файл позиций самоигры. Все числа little-endian, чтобы файл можно было
+ * отобразить в память и читать столбцы напрямую (например, numpy.frombuffer).
+ *
+ * Заголовок: magic "C6SP", версия, размер доски, байт на доску.
+ * Дальше блоки: число позиций N и столбцы подряд:
+ * game int32[N], ply int16[N], move int16[N] (клетка x * size + y),
+ * to_move int8[N] (номер StoneColor), result int8[N] (1 - ходящий выиграл, -1 - проиграл, 0 - ничья),
+ * board uint8[N * байт на доску] (2 бита на клетку, клетка i в байте i / 4, биты (i % 4) * 2).
+ * Позиция - доска перед постановкой камня move.
+ */
+public class DatasetWriter implements Closeable {
+    static final int MAGIC = 0x50533643;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+
+    private final FileChannel channel;
+    private final int boardBytes;
+
+    public DatasetWriter(Path path, int boardSize) throws IOException {
+        this.boardBytes = boardBytes(boardSize);
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(boardSize).putInt(boardBytes).flip();
+        writeFully(header);
+    }
+
+    static int boardBytes(int boardSize) {
+        return (boardSize * boardSize + 3) / 4;
+    }
+
+    public Batch newBatch(int capacity) {
+        return new Batch(capacity, boardBytes);
+    }
+
+    /** Дописывает блок целиком и очищает пакет; блоки разных потоков не перемешиваются. */
+    public void write(Batch batch) throws IOException {
+        if (batch.size == 0) {
+            return;
+        }
+        ByteBuffer[] buffers = batch.flip();
+        synchronized (this) {
+            long remaining = 0;
+            for (ByteBuffer buffer : buffers) {
+                remaining += buffer.remaining();
+            }
+            while (remaining > 0) {
+                remaining -= channel.write(buffers);
+            }
+        }
+        batch.clear();
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Пакет позиций одного потока. Буферы столбцов выделяются один раз и
+     * переиспользуются, запись позиции не создает объектов.
+     */
+    public static class Batch {
+        private final int capacity;
+        private final ByteBuffer count;
+        private final ByteBuffer game;
+        private final ByteBuffer ply;
+        private final ByteBuffer move;
+        private final ByteBuffer toMove;
+        private final ByteBuffer result;
+        private final ByteBuffer board;
+        private final ByteBuffer[] columns;
+        private final byte[] packed;
+        private int size;
+
+        Batch(int capacity, int boardBytes) {
+            this.capacity = capacity;
+            count = column(4);
+            game = column(4L * capacity);
+            ply = column(2L * capacity);
+            move = column(2L * capacity);
+            toMove = column(capacity);
+            result = column(capacity);
+            board = column((long) boardBytes * capacity);
+            columns = new ByteBuffer[]{count, game, ply, move, toMove, result, board};
+            packed = new byte[boardBytes];
+        }
+
+        private static ByteBuffer column(long bytes) {
+            if (bytes > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Слишком большой пакет");
+            }
+            return ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int remaining() {
+            return capacity - size;
+        }
+
+        /** Начинает новую партию: доска позиции снова пустая. */
+        public void newGame() {
+            Arrays.fill(packed, (byte) 0);
+        }
+
+        /**
+         * Добавляет позицию (текущая доска пакета) и ход из нее, затем ставит камень на доску пакета.
+         * Результат заполняется в конце партии через setResults.
+         */
+        public void add(int gameNumber, int plyNumber, int cell, StoneColor color) {
+            game.putInt(gameNumber);
+            ply.putShort((short) plyNumber);
+            move.putShort((short) cell);
+            toMove.put((byte) color.getNumber());
+            result.put((byte) 0);
+            board.put(packed);
+            packed[cell >> 2] |= (byte) (color.getNumber() << ((cell & 3) * 2));
+            size++;
+        }
+
+        /** Проставляет результат позициям партии, начиная с позиции from. */
+        public void setResults(int from, StoneColor winner) {
+            if (winner == StoneColor.EMPTY) {
+                return;
+            }
+            for (int i = from; i < size; i++) {
+                result.put(i, toMove.get(i) == winner.getNumber() ? (byte) 1 : (byte) -1);
+            }
+        }
+
+        private ByteBuffer[] flip() {
+            count.clear();
+            count.putInt(size);
+            for (ByteBuffer column : columns) {
+                column.flip();
+            }
+            return columns;
+        }
+
+        private void clear() {
+            for (ByteBuffer column : columns) {
+                column.clear();
+            }
+            size = 0;
+        }
+    }
+}
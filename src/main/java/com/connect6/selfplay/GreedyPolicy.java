@@ -0,0 +1,77 @@
+package com.connect6.selfplay;
+
+import com.connect6.grpc.StoneColor;
+import com.connect6.rules.GameBoard;
+
+import java.util.Random;
+
+/**
+ * Жадная политика: клетка, которая сильнее всего удлиняет свои линии или
+ * обрывает линии соперника. С небольшой вероятностью ходит случайно, чтобы
+ * партии в наборе данных не повторялись.
+ */
+public class GreedyPolicy implements MovePolicy {
+    private static final int[][] DIRECTIONS = {{1, 0}, {0, 1}, {1, 1}, {1, -1}};
+    // Вес линии по числу камней, которые окажутся в ряд вместе с клеткой
+    private static final long[] LINE_WEIGHTS = {0, 1, 8, 64, 512, 4096, 1 << 20};
+    private static final int EXPLORE_PERCENT = 10;
+
+    private final RandomPolicy fallback = new RandomPolicy();
+
+    @Override
+    public int chooseCell(GameBoard board, StoneColor color, Random random) {
+        if (random.nextInt(100) < EXPLORE_PERCENT) {
+            return fallback.chooseCell(board, color, random);
+        }
+        StoneColor opponent = color == StoneColor.BLACK ? StoneColor.WHITE : StoneColor.BLACK;
+        int size = board.getBoardSize();
+        // Клетки дальше двух от всех камней не удлиняют и не обрывают ни одной линии
+        int minX = size, minY = size, maxX = -1, maxY = -1;
+        for (int i = 0; i < board.getStoneCount(); i++) {
+            minX = Math.min(minX, board.getMoveX(i));
+            maxX = Math.max(maxX, board.getMoveX(i));
+            minY = Math.min(minY, board.getMoveY(i));
+            maxY = Math.max(maxY, board.getMoveY(i));
+        }
+        int best = -1;
+        long bestScore = 0;
+        int ties = 0;
+        for (int x = Math.max(0, minX - 2); x <= Math.min(size - 1, maxX + 2); x++) {
+            for (int y = Math.max(0, minY - 2); y <= Math.min(size - 1, maxY + 2); y++) {
+                if (board.getStone(x, y) != StoneColor.EMPTY) {
+                    continue;
+                }
+                long score = 0;
+                for (int[] direction : DIRECTIONS) {
+                    // Свои линии чуть важнее чужих: при равенстве атакуем
+                    score += 2 * LINE_WEIGHTS[run(board, x, y, direction, color)];
+                    score += LINE_WEIGHTS[run(board, x, y, direction, opponent)];
+                }
+                if (score > bestScore) {
+                    best = x * size + y;
+                    bestScore = score;
+                    ties = 1;
+                } else if (score == bestScore && score > 0 && random.nextInt(++ties) == 0) {
+                    best = x * size + y;
+                }
+            }
+        }
+        return best >= 0 ? best : fallback.chooseCell(board, color, random);
+    }
+
+    // Длина линии цвета color, которая получится, если поставить камень в (x, y), не больше 6
+    private static int run(GameBoard board, int x, int y, int[] direction, StoneColor color) {
+        int count = 1;
+        for (int sign = -1; sign <= 1; sign += 2) {
+            for (int i = 1; i < LINE_WEIGHTS.length - 1; i++) {
+                int nx = x + sign * i * direction[0];
+                int ny = y + sign * i * direction[1];
+                if (board.getStone(nx, ny) != color) {
+                    break;
+                }
+                count++;
+            }
+        }
+        return Math.min(count, LINE_WEIGHTS.length - 1);
+    }
+}
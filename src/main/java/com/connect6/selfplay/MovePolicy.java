@@ -0,0 +1,26 @@
+package com.connect6.selfplay;
+
+import com.connect6.grpc.StoneColor;
+import com.connect6.rules.GameBoard;
+
+import java.util.Random;
+
+/**
+ * Политика выбора камня для самоигры. Вызывается на каждый камень, кроме первого
+ * (он всегда в центре), и должна вернуть свободную клетку x * size + y.
+ * Один экземпляр используется одним потоком.
+ */
+public interface MovePolicy {
+    int chooseCell(GameBoard board, StoneColor color, Random random);
+
+    static MovePolicy forName(String name) {
+        switch (name) {
+            case "random":
+                return new RandomPolicy();
+            case "greedy":
+                return new GreedyPolicy();
+            default:
+                throw new IllegalArgumentException("Неизвестная политика: " + name + " (random, greedy)");
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.connect6.selfplay;
+
+import com.connect6.grpc.StoneColor;
+import com.connect6.rules.GameBoard;
+
+import java.util.Random;
+
+/** Случайная свободная клетка. */
+public class RandomPolicy implements MovePolicy {
+    private static final int RANDOM_ATTEMPTS = 32;
+
+    @Override
+    public int chooseCell(GameBoard board, StoneColor color, Random random) {
+        int size = board.getBoardSize();
+        int cells = size * size;
+        for (int i = 0; i < RANDOM_ATTEMPTS; i++) {
+            int cell = random.nextInt(cells);
+            if (board.getStone(cell / size, cell % size) == StoneColor.EMPTY) {
+                return cell;
+            }
+        }
+        // Почти заполненная доска: обход с случайной точки
+        int start = random.nextInt(cells);
+        for (int i = 0; i < cells; i++) {
+            int cell = (start + i) % cells;
+            if (board.getStone(cell / size, cell % size) == StoneColor.EMPTY) {
+                return cell;
+            }
+        }
+        throw new IllegalStateException("Доска заполнена");
+    }
+}
@@ -0,0 +1,161 @@
+package com.connect6.selfplay;
+
+import com.connect6.grpc.StoneColor;
+import com.connect6.rules.GameBoard;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Генератор набора данных самоигры: партии идут параллельно в нескольких потоках,
+ * позиции пакетами пишутся в колоночный файл (формат описан в DatasetWriter).
+ * Каждый поток переиспользует свою доску и буферы пакета, так что в игровом
+ * цикле объекты не создаются.
+ *
+ * Аргументы: файл [партий] [потоков] [размер доски] [политика черных] [политика белых] [seed]
+ */
+public class SelfPlayGenerator {
+    private static final int BATCH_POSITIONS = 1 << 16;
+
+    private final DatasetWriter writer;
+    private final int boardSize;
+    private final AtomicInteger nextGame = new AtomicInteger();
+    private final AtomicLong positions = new AtomicLong();
+    private final AtomicLong cpuNanos = new AtomicLong();
+    private final int[] results = new int[3];
+
+    SelfPlayGenerator(DatasetWriter writer, int boardSize) {
+        this.writer = writer;
+        this.boardSize = boardSize;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Использование: SelfPlayGenerator файл [партий] [потоков] [размер доски] " +
+                    "[политика черных] [политика белых] [seed]");
+            System.exit(2);
+        }
+        Path output = Paths.get(args[0]);
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int boardSize = args.length > 3 ? Integer.parseInt(args[3]) : GameBoard.DEFAULT_BOARD_SIZE;
+        String blackPolicy = args.length > 4 ? args[4] : "greedy";
+        String whitePolicy = args.length > 5 ? args[5] : blackPolicy;
+        long seed = args.length > 6 ? Long.parseLong(args[6]) : System.nanoTime();
+
+        if (boardSize < GameBoard.MIN_BOARD_SIZE || boardSize > GameBoard.SPARSE_THRESHOLD) {
+            throw new IllegalArgumentException("Размер доски для самоигры: от " + GameBoard.MIN_BOARD_SIZE +
+                    " до " + GameBoard.SPARSE_THRESHOLD);
+        }
+
+        try (DatasetWriter writer = new DatasetWriter(output, boardSize)) {
+            SelfPlayGenerator generator = new SelfPlayGenerator(writer, boardSize);
+            long start = System.nanoTime();
+            generator.run(games, threads, blackPolicy, whitePolicy, seed);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            generator.report(games, threads, seconds);
+        }
+    }
+
+    void run(int games, int threads, String blackPolicy, String whitePolicy, long seed) throws InterruptedException {
+        List<Thread> workers = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            MovePolicy black = MovePolicy.forName(blackPolicy);
+            MovePolicy white = MovePolicy.forName(whitePolicy);
+            Random random = new Random(seed + i);
+            Thread worker = new Thread(() -> {
+                try {
+                    work(games, black, white, random);
+                } catch (IOException | RuntimeException e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            }, "selfplay-" + i);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException("Ошибка самоигры: " + failures.get(0).getMessage(), failures.get(0));
+        }
+    }
+
+    private void work(int games, MovePolicy black, MovePolicy white, Random random) throws IOException {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        boolean cpuTime = threadBean.isCurrentThreadCpuTimeSupported();
+        long cpuStart = cpuTime ? threadBean.getCurrentThreadCpuTime() : 0;
+        int cells = boardSize * boardSize;
+        GameBoard board = new GameBoard(boardSize);
+        DatasetWriter.Batch batch = writer.newBatch(BATCH_POSITIONS);
+        int[] localResults = new int[3];
+        long localPositions = 0;
+
+        int gameNumber;
+        while ((gameNumber = nextGame.getAndIncrement()) < games) {
+            // Партия целиком помещается в пакет: результат проставляется до записи
+            if (batch.remaining() < cells) {
+                writer.write(batch);
+            }
+            board.clear();
+            batch.newGame();
+            int gameStart = batch.size();
+
+            int center = board.getCenter();
+            batch.add(gameNumber, 0, center * boardSize + center, StoneColor.BLACK);
+            board.replayStone(center, center);
+
+            while (board.checkWinner() == StoneColor.EMPTY && board.getStoneCount() < cells) {
+                StoneColor color = GameBoard.colorOfMove(board.getStoneCount());
+                int cell = (color == StoneColor.BLACK ? black : white).chooseCell(board, color, random);
+                batch.add(gameNumber, board.getStoneCount(), cell, color);
+                board.replayStone(cell / boardSize, cell % boardSize);
+            }
+
+            StoneColor winner = board.checkWinner();
+            batch.setResults(gameStart, winner);
+            localResults[winner.getNumber()]++;
+            localPositions += board.getStoneCount();
+        }
+        writer.write(batch);
+
+        positions.addAndGet(localPositions);
+        if (cpuTime) {
+            cpuNanos.addAndGet(threadBean.getCurrentThreadCpuTime() - cpuStart);
+        }
+        synchronized (results) {
+            for (int i = 0; i < results.length; i++) {
+                results[i] += localResults[i];
+            }
+        }
+    }
+
+    private void report(int games, int threads, double seconds) {
+        long total = positions.get();
+        double perSecond = total / seconds;
+        System.out.println("Партий: " + games + ", позиций: " + total + ", за " +
+                String.format("%.2f", seconds) + " с");
+        synchronized (results) {
+            System.out.println("Победы черных: " + results[StoneColor.BLACK.getNumber()] +
+                    ", белых: " + results[StoneColor.WHITE.getNumber()] +
+                    ", ничьи: " + results[StoneColor.EMPTY.getNumber()]);
+        }
+        System.out.println(String.format("Позиций в секунду: %.0f, на поток: %.0f", perSecond, perSecond / threads));
+        if (cpuNanos.get() > 0) {
+            // По процессорному времени потоков: не зависит от того, сколько ядер было свободно
+            System.out.println(String.format("Позиций в секунду на ядро (по CPU времени): %.0f",
+                    total / (cpuNanos.get() / 1e9)));
+        }
+    }
+}
@@ -1,29 +1,95 @@
 package com.connect6.server;
 
 import com.connect6.grpc.*;
+import com.connect6.rules.BoardCodec;
+import com.connect6.rules.GameBoard;
+import com.connect6.rules.MoveCheck;
+import com.connect6.server.jfr.*;
+import com.google.protobuf.UnsafeByteOperations;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Status;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class Connect6GameService extends Connect6GameGrpc.Connect6GameImplBase {
+    private static final long HANDOFF_TIMEOUT_SECONDS = 30;
+    // Сколько принятая игра ждет подключения своих игроков
+    private static final long ATTACH_TIMEOUT_SECONDS = Long.getLong("connect6.attachTimeoutSeconds", 60);
+    // Насколько номера из принятой игры могут опережать свои счетчики: таблица сессий растет до наибольшего номера
+    private static final int MAX_IMPORTED_ID_GAP = 1 << 24;
+    private static final int RECENT_GAMES_LIMIT = 1024;
+    private static final int DEFAULT_LOAD_INTERVAL_MILLIS = 1000;
+    private static final int MIN_LOAD_INTERVAL_MILLIS = 100;
+    private static final boolean LOG_MOVES = Boolean.getBoolean("connect6.logMoves");
+    // Каждый размер доски - отдельная очередь подбора, поэтому допустимые размеры ограничены
+    private static final int MAX_BOARD_SIZE = Math.min(
+            Integer.getInteger("connect6.maxBoardSize", GameBoard.MAX_BOARD_SIZE), GameBoard.MAX_BOARD_SIZE);
+
+    // Ответы на ход не зависят от партии, поэтому создаются один раз
+    private static final MoveResponse MOVE_ACCEPTED = moveResponse(true, "Ход принят");
+    static final MoveResponse GAME_FINISHED = moveResponse(true, "Игра завершена");
+    private static final MoveResponse NOT_IN_GAME = moveResponse(false, "Игрок не в игре");
+    private static final MoveResponse GAME_NOT_FOUND = moveResponse(false, "Игра не найдена");
+    private static final MoveResponse NOT_YOUR_TURN = moveResponse(false, "Сейчас не ваш ход");
+    private static final MoveResponse FIRST_MOVE_SINGLE_STONE =
+            moveResponse(false, "Первый ход черных - только один камень");
+    private static final MoveResponse INVALID_MOVE = moveResponse(false, "Невозможно сделать ход");
+    private static final MoveResponse HANDOFF_IN_PROGRESS =
+            moveResponse(false, "Игра переносится на другой сервер, повторите ход");
+    private static final GameUpdate BLACK_WINS = gameOver(StoneColor.BLACK, "Игра окончена! Победитель: Черные");
+    private static final GameUpdate WHITE_WINS = gameOver(StoneColor.WHITE, "Игра окончена! Победитель: Белые");
+
     private final AtomicInteger playerCounter = new AtomicInteger(1);
-    private final Map<Integer, PlayerSession> playerSessions = new ConcurrentHashMap<>();
-    private final BlockingQueue<PlayerSession> waitingQueue = new LinkedBlockingQueue<>();
+    private final AtomicInteger gameCounter = new AtomicInteger(1);
+    private final SessionTable<PlayerSession> playerSessions = new SessionTable<>();
+    private final Map<Integer, BlockingQueue<PlayerSession>> waitingQueues = new ConcurrentHashMap<>();
     private final Map<Integer, GameSession> activeGames = new ConcurrentHashMap<>();
+    // Последние завершенные и переданные игры: GetBoardState находит их по номеру и после снятия с активных
+    private final Map<Integer, GameSession> recentGames = Collections.synchronizedMap(
+            new LinkedHashMap<Integer, GameSession>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, GameSession> eldest) {
+                    return size() > RECENT_GAMES_LIMIT;
+                }
+            });
+    private final GameArchive archive;
+    private final ExecutorService matchmaker = Executors.newSingleThreadExecutor();
+    private final ScheduledExecutorService loadReporter = Executors.newSingleThreadScheduledExecutor();
+    private volatile String redirectAddress;
+    // Идет передача игр преемнику: новые игры не создаются
+    private volatile boolean draining;
 
     static class PlayerSession {
         final int id;
         final String name;
+        final int boardSize;
         StoneColor color;
         StreamObserver<ConnectResponse> connectObserver;
-        StreamObserver<GameUpdate> updateObserver;
-        int gameId = -1;
+        volatile StreamObserver<GameUpdate> updateObserver;
+        volatile GameSession game;
+        MatchWaitEvent matchWait;
+        // Игрок ушел; под монитором сессии, чтобы подбор не посадил его в новую игру
+        boolean departed;
+        // Мультиплексированный поток, которому принадлежит место; такие места не играют друг с другом
+        Object owner;
 
-        PlayerSession(int id, String name, StreamObserver<ConnectResponse> connectObserver) {
+        PlayerSession(int id, String name, int boardSize, StreamObserver<ConnectResponse> connectObserver) {
             this.id = id;
             this.name = name;
+            this.boardSize = boardSize;
             this.connectObserver = connectObserver;
         }
     }
@@ -34,16 +100,39 @@ public class Connect6GameService extends Connect6GameGrpc.Connect6GameImplBase {
         final PlayerSession whitePlayer;
         GameBoard gameBoard;
         int currentPlayerId;
+        // Игра отправлена преемнику, ходы здесь больше не принимаются
+        boolean handedOff;
+        // Адрес преемника, подтвердившего прием игры
+        String transferredTo;
+        volatile boolean finished;
+        // Итог партии для игрока, подписавшегося на обновления уже после ее окончания
+        GameUpdate gameOver;
+        private MoveResponse firstMoveNotInCenter;
+        // Снимок последней версии доски: повторные запросы не кодируют ее заново
+        private BoardState boardState;
 
-        GameSession(int gameId, PlayerSession blackPlayer, PlayerSession whitePlayer) {
+        GameSession(int gameId, PlayerSession blackPlayer, PlayerSession whitePlayer, int boardSize) {
             this.gameId = gameId;
             this.blackPlayer = blackPlayer;
             this.whitePlayer = whitePlayer;
-            this.gameBoard = new GameBoard();
+            this.gameBoard = new GameBoard(boardSize);
             this.currentPlayerId = blackPlayer.id;
 
-            blackPlayer.gameId = gameId;
-            whitePlayer.gameId = gameId;
+            // Цвет назначается до того, как игра станет видна через player.game:
+            // отключение игрока сразу после подбора должно найти цвет соперника
+            blackPlayer.color = StoneColor.BLACK;
+            whitePlayer.color = StoneColor.WHITE;
+            blackPlayer.game = this;
+            whitePlayer.game = this;
+        }
+
+        MoveResponse firstMoveNotInCenter() {
+            if (firstMoveNotInCenter == null) {
+                int center = gameBoard.getCenter();
+                firstMoveNotInCenter = moveResponse(false,
+                        "Первый ход черных должен быть в центр (" + center + "," + center + ")");
+            }
+            return firstMoveNotInCenter;
         }
 
         PlayerSession getOpponent(int playerId) {
@@ -52,6 +141,44 @@ public class Connect6GameService extends Connect6GameGrpc.Connect6GameImplBase {
             return null;
         }
 
+        /** Вызывается под блокировкой игры. */
+        void recordGameOver(GameUpdate update) {
+            gameOver = update;
+            boardState = null;
+        }
+
+        /** Вызывается под блокировкой игры. */
+        BoardState boardState() {
+            int sequence = gameBoard.getStoneCount();
+            if (boardState == null || boardState.getSequence() != sequence || boardState.getFinished() != finished) {
+                boardState = encodeBoardState(sequence);
+            }
+            return boardState;
+        }
+
+        private BoardState encodeBoardState(int sequence) {
+            BoardState.Builder state = BoardState.newBuilder()
+                    .setGameId(gameId)
+                    .setBoardSize(gameBoard.getBoardSize())
+                    .setSequence(sequence)
+                    .setFinished(finished);
+            if (finished) {
+                state.setTurn(StoneColor.EMPTY)
+                        .setWinner(gameOver != null ? gameOver.getColor() : gameBoard.checkWinner());
+            } else {
+                state.setTurn(currentPlayerId == blackPlayer.id ? StoneColor.BLACK : StoneColor.WHITE)
+                        .setWinner(StoneColor.EMPTY);
+            }
+
+            byte[] moves = BoardCodec.encodeMoves(gameBoard);
+            if (moves.length < BoardCodec.packedLength(gameBoard.getBoardSize())) {
+                state.setMoveList(UnsafeByteOperations.unsafeWrap(moves));
+            } else {
+                state.setPackedCells(UnsafeByteOperations.unsafeWrap(BoardCodec.packCells(gameBoard)));
+            }
+            return state.build();
+        }
+
         boolean isPlayerTurn(int playerId) {
             return currentPlayerId == playerId;
         }
@@ -64,7 +191,12 @@ public class Connect6GameService extends Connect6GameGrpc.Connect6GameImplBase {
     }
 
     public Connect6GameService() {
-        Executors.newSingleThreadExecutor().submit(() -> {
+        this(null);
+    }
+
+    public Connect6GameService(GameArchive archive) {
+        this.archive = archive;
+        matchmaker.submit(() -> {
             while (true) {
                 try {
                     createGameIfPossible();
@@ -76,31 +208,141 @@ public class Connect6GameService extends Connect6GameGrpc.Connect6GameImplBase {
         });
     }
 
+    /** Останавливает подбор соперников; вызывается при остановке сервера. */
+    public void shutdown() {
+        matchmaker.shutdownNow();
+        loadReporter.shutdownNow();
+    }
+
+    boolean isGameActive(int gameId) {
+        return activeGames.containsKey(gameId);
+    }
+
+    /**
+     * Проверка согласованности состояния в спокойном состоянии (без идущих вызовов):
+     * каждый игрок активной игры подключен, ссылается на нее, не стоит в очереди
+     * и не участвует в другой активной игре.
+     */
+    List<String> audit() {
+        List<String> problems = new ArrayList<>();
+        Map<Integer, Integer> gameByPlayer = new HashMap<>();
+        for (GameSession game : activeGames.values()) {
+            if (game.finished) {
+                problems.add("Игра #" + game.gameId + " завершена, но осталась активной");
+            }
+            for (PlayerSession player : new PlayerSession[]{game.blackPlayer, game.whitePlayer}) {
+                Integer other = gameByPlayer.put(player.id, game.gameId);
+                if (other != null) {
+                    problems.add("Игрок " + player.id + " в двух играх: #" + other + " и #" + game.gameId);
+                }
+                if (player.game != game) {
+                    problems.add("Игрок " + player.id + " не ссылается на свою игру #" + game.gameId);
+                }
+                if (playerSessions.get(player.id) != player && !game.handedOff) {
+                    problems.add("Игрок " + player.id + " активной игры #" + game.gameId + " отключен");
+                }
+                BlockingQueue<PlayerSession> waitingQueue = waitingQueues.get(player.boardSize);
+                if (waitingQueue != null && waitingQueue.contains(player)) {
+                    problems.add("Игрок " + player.id + " игры #" + game.gameId + " стоит в очереди");
+                }
+            }
+        }
+        return problems;
+    }
+
     private void createGameIfPossible() throws InterruptedException {
-        if (waitingQueue.size() >= 2) {
-            PlayerSession player1 = waitingQueue.take();
-            PlayerSession player2 = waitingQueue.take();
+        for (Map.Entry<Integer, BlockingQueue<PlayerSession>> entry : waitingQueues.entrySet()) {
+            // Очередь разбирается за один проход: иначе каждая пара ждала бы следующего такта
+            while (createGameIfPossible(entry.getKey(), entry.getValue())) {
+            }
+            // Пустые очереди убираются; enqueue добавляет игрока через compute, так что не теряет его
+            waitingQueues.computeIfPresent(entry.getKey(), (size, queue) -> queue.isEmpty() ? null : queue);
+        }
+    }
 
-            int gameId = activeGames.size() + 1;
-            GameSession game = new GameSession(gameId, player1, player2);
-            activeGames.put(gameId, game);
+    static String checkBoardSize(int boardSize) {
+        if (boardSize < GameBoard.MIN_BOARD_SIZE || boardSize > MAX_BOARD_SIZE) {
+            return "Размер доски должен быть от " + GameBoard.MIN_BOARD_SIZE + " до " + MAX_BOARD_SIZE;
+        }
+        return null;
+    }
 
-            player1.color = StoneColor.BLACK;
-            player2.color = StoneColor.WHITE;
+    /** Ставит игрока в очередь его размера доски и возвращает длину очереди. */
+    private int enqueue(PlayerSession session) {
+        startMatchWait(session);
+        BlockingQueue<PlayerSession> waitingQueue = waitingQueues.compute(session.boardSize, (size, queue) -> {
+            if (queue == null) {
+                queue = new LinkedBlockingQueue<>();
+            }
+            queue.add(session);
+            return queue;
+        });
+        return waitingQueue.size();
+    }
+
+    /** @return true, если очередь изменилась и стоит попробовать подобрать следующую пару */
+    private boolean createGameIfPossible(int boardSize, BlockingQueue<PlayerSession> waitingQueue)
+            throws InterruptedException {
+        if (!draining && waitingQueue.size() >= 2) {
+            PlayerSession player1 = null;
+            PlayerSession player2 = null;
+            for (PlayerSession candidate : waitingQueue) {
+                if (player1 == null) {
+                    player1 = candidate;
+                } else if (candidate.owner == null || candidate.owner != player1.owner) {
+                    player2 = candidate;
+                    break;
+                }
+            }
+            if (player2 == null || !waitingQueue.remove(player1)) {
+                return false;
+            }
+            if (!waitingQueue.remove(player2)) {
+                waitingQueue.put(player1);
+                return false;
+            }
+
+            // Игрок мог отключиться между выбором из очереди и созданием игры
+            int gameId;
+            synchronized (player1) {
+                synchronized (player2) {
+                    if (player1.departed || player2.departed) {
+                        if (!player1.departed) {
+                            waitingQueue.put(player1);
+                        }
+                        if (!player2.departed) {
+                            waitingQueue.put(player2);
+                        }
+                        // Ушедший снят с очереди, оставшиеся могут составить пару
+                        return true;
+                    }
+                    gameId = gameCounter.getAndIncrement();
+                    activeGames.put(gameId, new GameSession(gameId, player1, player2, boardSize));
+                }
+            }
+            GameSession game = player1.game;
+            commitMatchWait(player1, gameId);
+            commitMatchWait(player2, gameId);
+            int center = game.gameBoard.getCenter();
 
             System.out.println("Создаем игру #" + gameId + ": " +
                     player1.name + " (черные, ID:" + player1.id + ") vs " +
-                    player2.name + " (белые, ID:" + player2.id + ")");
+                    player2.name + " (белые, ID:" + player2.id + "), доска " + boardSize + "x" + boardSize);
 
             ConnectResponse blackResponse = ConnectResponse.newBuilder()
                     .setPlayerId(player1.id)
                     .setColor(StoneColor.BLACK)
-                    .setMessage("Игра началась! Вы играете черными. Первый ход: один камень в центр (9,9)")
+                    .setBoardSize(boardSize)
+                    .setGameId(gameId)
+                    .setMessage("Игра началась! Вы играете черными. Первый ход: один камень в центр (" +
+                            center + "," + center + ")")
                     .build();
 
             ConnectResponse whiteResponse = ConnectResponse.newBuilder()
                     .setPlayerId(player2.id)
                     .setColor(StoneColor.WHITE)
+                    .setBoardSize(boardSize)
+                    .setGameId(gameId)
                     .setMessage("Игра началась! Вы играете белыми. Ожидайте ход черных")
                     .build();
 
@@ -109,6 +351,27 @@ public class Connect6GameService extends Connect6GameGrpc.Connect6GameImplBase {
 
             player1.connectObserver.onCompleted();
             player2.connectObserver.onCompleted();
+            return true;
+        }
+        return false;
+    }
+
+    private static void startMatchWait(PlayerSession player) {
+        MatchWaitEvent matchWait = new MatchWaitEvent();
+        if (matchWait.isEnabled()) {
+            matchWait.playerId = player.id;
+            matchWait.boardSize = player.boardSize;
+            matchWait.begin();
+            player.matchWait = matchWait;
+        }
+    }
+
+    private static void commitMatchWait(PlayerSession player, int gameId) {
+        MatchWaitEvent matchWait = player.matchWait;
+        if (matchWait != null) {
+            matchWait.gameId = gameId;
+            matchWait.commit();
+            player.matchWait = null;
         }
     }
 
@@ -123,28 +386,42 @@ public class Connect6GameService extends Connect6GameGrpc.Connect6GameImplBase {
             @Override
             public void onNext(ConnectRequest request) {
                 if (!connected) {
+                    String redirect = redirectAddress;
+                    if (redirect != null) {
+                        responseObserver.onNext(redirectResponse(-1, redirect));
+                        responseObserver.onCompleted();
+                        connected = true;
+                        return;
+                    }
+
+                    int boardSize = request.getBoardSize() == 0 ?
+                            GameBoard.DEFAULT_BOARD_SIZE : request.getBoardSize();
+                    String sizeError = checkBoardSize(boardSize);
+                    if (sizeError != null) {
+                        responseObserver.onError(Status.INVALID_ARGUMENT
+                                .withDescription(sizeError)
+                                .asRuntimeException());
+                        return;
+                    }
+
                     int playerId = playerCounter.getAndIncrement();
-                    session = new PlayerSession(playerId, request.getPlayerName(), responseObserver);
+                    session = new PlayerSession(playerId, request.getPlayerName(), boardSize, responseObserver);
 
                     System.out.println("Подключение: " + request.getPlayerName() + " (ID: " + playerId + ")");
 
                     playerSessions.put(playerId, session);
 
-                    try {
-                        waitingQueue.put(session);
-
-                        System.out.println("Игрок " + playerId + " добавлен в очередь ожидания. В очереди: " + waitingQueue.size());
+                    int waiting = enqueue(session);
 
-                        ConnectResponse waitResponse = ConnectResponse.newBuilder()
-                                .setPlayerId(playerId)
-                                .setColor(StoneColor.EMPTY)
-                                .setMessage("Ожидание второго игрока... В очереди: " + waitingQueue.size())
-                                .build();
-                        responseObserver.onNext(waitResponse);
+                    System.out.println("Игрок " + playerId + " добавлен в очередь ожидания. В очереди: " + waiting);
 
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
+                    ConnectResponse waitResponse = ConnectResponse.newBuilder()
+                            .setPlayerId(playerId)
+                            .setColor(StoneColor.EMPTY)
+                            .setBoardSize(boardSize)
+                            .setMessage("Ожидание второго игрока... В очереди: " + waiting)
+                            .build();
+                    responseObserver.onNext(waitResponse);
 
                     connected = true;
                 }
@@ -173,140 +450,515 @@ public class Connect6GameService extends Connect6GameGrpc.Connect6GameImplBase {
         };
     }
 
+    @Override
+    public StreamObserver<PlayRequest> play(StreamObserver<PlayEvent> responseObserver) {
+        return new MultiplexedSession(responseObserver);
+    }
+
+    /**
+     * Поток клиента, через который идут все его партии.
+     * Каждая заявка на игру становится отдельным местом (PlayerSession), чьи ответы и обновления
+     * пересылаются в общий поток с пометкой game_id.
+     */
+    private class MultiplexedSession implements StreamObserver<PlayRequest> {
+        private final StreamObserver<PlayEvent> events;
+        private final Map<Integer, PlayerSession> seatsByPlayer = new ConcurrentHashMap<>();
+        private final Map<Integer, PlayerSession> seatsByGame = new ConcurrentHashMap<>();
+        private boolean closed;
+
+        MultiplexedSession(StreamObserver<PlayEvent> events) {
+            this.events = events;
+        }
+
+        @Override
+        public void onNext(PlayRequest request) {
+            switch (request.getCommandCase()) {
+                case JOIN:
+                    handleJoin(request.getJoin());
+                    break;
+                case MOVE:
+                    handleMove(request.getMove());
+                    break;
+                case LEAVE:
+                    handleLeave(request.getLeave());
+                    break;
+                case ATTACH:
+                    handleAttach(request.getAttach());
+                    break;
+                default:
+                    send(PlayEvent.newBuilder()
+                            .setUpdate(GameUpdate.newBuilder()
+                                    .setType(GameUpdate.UpdateType.ERROR)
+                                    .setMessage("Неизвестная команда"))
+                            .build());
+            }
+        }
+
+        private void handleJoin(JoinGame join) {
+            String redirect = redirectAddress;
+            if (redirect != null) {
+                send(PlayEvent.newBuilder()
+                        .setRequestTag(join.getRequestTag())
+                        .setJoined(redirectResponse(-1, redirect))
+                        .build());
+                return;
+            }
+
+            int boardSize = join.getBoardSize() == 0 ? GameBoard.DEFAULT_BOARD_SIZE : join.getBoardSize();
+            String sizeError = checkBoardSize(boardSize);
+            if (sizeError != null) {
+                send(PlayEvent.newBuilder()
+                        .setRequestTag(join.getRequestTag())
+                        .setUpdate(GameUpdate.newBuilder()
+                                .setType(GameUpdate.UpdateType.ERROR)
+                                .setMessage(sizeError))
+                        .build());
+                return;
+            }
+
+            int playerId = playerCounter.getAndIncrement();
+            PlayerSession seat = new PlayerSession(playerId, join.getPlayerName(), boardSize, null);
+            seat.owner = this;
+            seat.updateObserver = bind(seat, join.getRequestTag());
+
+            playerSessions.put(playerId, seat);
+            seatsByPlayer.put(playerId, seat);
+
+            // Ответ уходит до постановки в очередь: иначе подбор пары мог бы опередить его,
+            // и клиент получил бы "ожидание" уже после начала игры
+            seat.connectObserver.onNext(ConnectResponse.newBuilder()
+                    .setPlayerId(playerId)
+                    .setColor(StoneColor.EMPTY)
+                    .setBoardSize(boardSize)
+                    .setMessage("Ожидание второго игрока...")
+                    .build());
+            enqueue(seat);
+        }
+
+        /**
+         * Занимает место игры, перенесенной сюда с другого сервера: после REDIRECT клиент
+         * присылает номер места и игры, и партия продолжается в этом потоке.
+         */
+        private void handleAttach(AttachGame attach) {
+            PlayerSession seat = playerSessions.get(attach.getPlayerId());
+            GameSession game = seat != null ? seat.game : null;
+            boolean free = false;
+            if (game != null && game.gameId == attach.getGameId()) {
+                synchronized (seat) {
+                    // Свободно только принятое место, к которому еще никто не подключился
+                    free = !seat.departed && seat.owner == null &&
+                            seat.connectObserver == null && seat.updateObserver == null;
+                    if (free) {
+                        seat.owner = this;
+                    }
+                }
+            }
+            if (!free) {
+                send(PlayEvent.newBuilder()
+                        .setGameId(attach.getGameId())
+                        .setPlayerId(attach.getPlayerId())
+                        .setRequestTag(attach.getRequestTag())
+                        .setUpdate(GameUpdate.newBuilder()
+                                .setType(GameUpdate.UpdateType.ERROR)
+                                .setMessage("Игра не найдена или место уже занято"))
+                        .build());
+                return;
+            }
+
+            StreamObserver<GameUpdate> updates = bind(seat, attach.getRequestTag());
+            seatsByPlayer.put(seat.id, seat);
+            seat.connectObserver.onNext(ConnectResponse.newBuilder()
+                    .setPlayerId(seat.id)
+                    .setColor(seat.color)
+                    .setBoardSize(seat.boardSize)
+                    .setMessage("Игра продолжена")
+                    .build());
+            // Если партия уже закончилась, итог придет сразу
+            subscribe(seat, updates);
+        }
+
+        // Пересылает ответы и обновления места в общий поток; возвращает наблюдатель обновлений
+        private StreamObserver<GameUpdate> bind(PlayerSession seat, int tag) {
+            seat.connectObserver = new StreamObserver<ConnectResponse>() {
+                @Override
+                public void onNext(ConnectResponse response) {
+                    int gameId = 0;
+                    if (seat.game != null) {
+                        gameId = seat.game.gameId;
+                        seatsByGame.put(gameId, seat);
+                    }
+                    send(PlayEvent.newBuilder()
+                            .setGameId(gameId)
+                            .setPlayerId(seat.id)
+                            .setRequestTag(tag)
+                            .setJoined(response)
+                            .build());
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                }
+
+                @Override
+                public void onCompleted() {
+                }
+            };
+            return new StreamObserver<GameUpdate>() {
+                @Override
+                public void onNext(GameUpdate update) {
+                    send(PlayEvent.newBuilder()
+                            .setGameId(seat.game != null ? seat.game.gameId : 0)
+                            .setPlayerId(seat.id)
+                            .setRequestTag(tag)
+                            .setUpdate(update)
+                            .build());
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                }
+
+                @Override
+                public void onCompleted() {
+                    // Партия места завершена или передана: освобождаем место, поток остается открытым
+                    release(seat);
+                }
+            };
+        }
+
+        private void handleMove(MoveCommand command) {
+            PlayerSession seat = seatsByGame.get(command.getGameId());
+            MoveResponse response = seat != null ?
+                    move(seat, command.getPosition1(), command.getPosition2()) : NOT_IN_GAME;
+            send(PlayEvent.newBuilder()
+                    .setGameId(command.getGameId())
+                    .setPlayerId(seat != null ? seat.id : 0)
+                    .setMoveResult(response)
+                    .build());
+        }
+
+        private void handleLeave(LeaveGame leave) {
+            PlayerSession seat = seatsByPlayer.remove(leave.getPlayerId());
+            if (seat != null) {
+                if (seat.game != null) {
+                    seatsByGame.remove(seat.game.gameId);
+                }
+                cleanupPlayer(seat.id);
+            }
+        }
+
+        private void release(PlayerSession seat) {
+            seatsByPlayer.remove(seat.id);
+            if (seat.game != null) {
+                seatsByGame.remove(seat.game.gameId);
+            }
+            playerSessions.remove(seat.id);
+        }
+
+        private synchronized void send(PlayEvent event) {
+            if (!closed) {
+                events.onNext(event);
+            }
+        }
+
+        private void close() {
+            synchronized (this) {
+                closed = true;
+            }
+            for (PlayerSession seat : seatsByPlayer.values()) {
+                cleanupPlayer(seat.id);
+            }
+            seatsByPlayer.clear();
+            seatsByGame.clear();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            System.err.println("Ошибка мультиплексированного потока: " + t.getMessage());
+            close();
+        }
+
+        @Override
+        public void onCompleted() {
+            close();
+            events.onCompleted();
+        }
+    }
+
     private void cleanupPlayer(int playerId) {
+        SessionCleanupEvent cleanup = new SessionCleanupEvent();
+        cleanup.begin();
         PlayerSession session = playerSessions.remove(playerId);
         if (session != null) {
-            waitingQueue.remove(session);
-
-            if (session.gameId != -1) {
-                GameSession game = activeGames.get(session.gameId);
-                if (game != null) {
-                    PlayerSession opponent = game.getOpponent(playerId);
-                    if (opponent != null) {
-                        GameUpdate gameOver = GameUpdate.newBuilder()
-                                .setType(GameUpdate.UpdateType.GAME_OVER)
-                                .setMessage("Противник отключился. Игра завершена.")
-                                .build();
-                        opponent.updateObserver.onNext(gameOver);
-                        opponent.updateObserver.onCompleted();
-                    }
+            cleanup.playerId = playerId;
+            BlockingQueue<PlayerSession> waitingQueue = waitingQueues.get(session.boardSize);
+            if (waitingQueue != null) {
+                waitingQueue.remove(session);
+            }
+
+            GameSession game;
+            synchronized (session) {
+                session.departed = true;
+                game = session.game;
+            }
+            if (game != null) {
+                cleanup.gameId = game.gameId;
+                forfeit(game, playerId);
+            }
+            cleanup.commit();
+        }
+    }
+
+    // Ушедший игрок проигрывает; ничего не делает, если игра уже завершена или передается
+    private void forfeit(GameSession game, int playerId) {
+        if (!finishGame(game)) {
+            return;
+        }
+        PlayerSession opponent = game.getOpponent(playerId);
+        if (opponent != null) {
+            archiveGame(game, opponent.color, playerId);
+            GameUpdate gameOver = gameOver(opponent.color, "Противник отключился. Игра завершена.");
+            synchronized (game) {
+                game.recordGameOver(gameOver);
+                StreamObserver<GameUpdate> updates = opponent.updateObserver;
+                if (updates != null) {
+                    updates.onNext(gameOver);
+                    updates.onCompleted();
                 }
             }
         }
     }
 
+    // Снимает игру с доски активных ровно один раз, кто бы ее ни завершил
+    private boolean finishGame(GameSession game) {
+        synchronized (game) {
+            if (game.finished || game.handedOff) {
+                return false;
+            }
+            game.finished = true;
+        }
+        recentGames.put(game.gameId, game);
+        activeGames.remove(game.gameId);
+        return true;
+    }
+
     @Override
     public void makeMove(MoveRequest request,
                          StreamObserver<MoveResponse> responseObserver) {
-        System.out.println("Ход от игрока " + request.getPlayerId() +
-                ": (" + request.getPosition1().getX() + "," +
-                request.getPosition1().getY() + ") и (" +
-                request.getPosition2().getX() + "," +
-                request.getPosition2().getY() + ")");
+        if (LOG_MOVES) {
+            System.out.println("Ход от игрока " + request.getPlayerId() +
+                    ": (" + request.getPosition1().getX() + "," +
+                    request.getPosition1().getY() + ") и (" +
+                    request.getPosition2().getX() + "," +
+                    request.getPosition2().getY() + ")");
+        }
 
-        int playerId = request.getPlayerId();
-        PlayerSession player = playerSessions.get(playerId);
+        PlayerSession player = playerSessions.get(request.getPlayerId());
+        respond(responseObserver, move(player, request.getPosition1(), request.getPosition2()));
+    }
 
-        if (player == null || player.gameId == -1) {
-            sendError(responseObserver, "Игрок не в игре");
-            return;
+    private MoveResponse move(PlayerSession player, Position position1, Position position2) {
+        String redirect = redirectAddress;
+        if (player == null && redirect != null) {
+            return redirectMoveResponse(redirect);
         }
 
-        GameSession game = activeGames.get(player.gameId);
-        if (game == null) {
-            sendError(responseObserver, "Игра не найдена");
-            return;
+        if (player == null || player.game == null) {
+            return NOT_IN_GAME;
         }
 
-        if (!game.isPlayerTurn(playerId)) {
-            sendError(responseObserver, "Сейчас не ваш ход");
-            return;
+        GameSession game = player.game;
+        synchronized (game) {
+            if (game.handedOff) {
+                return game.transferredTo != null ? redirectMoveResponse(game.transferredTo) : HANDOFF_IN_PROGRESS;
+            }
+            if (game.finished) {
+                return GAME_NOT_FOUND;
+            }
+            return applyMove(game, player, position1, position2);
         }
+    }
 
-        int x1 = request.getPosition1().getX();
-        int y1 = request.getPosition1().getY();
-        int x2 = request.getPosition2().getX();
-        int y2 = request.getPosition2().getY();
+    private MoveResponse applyMove(GameSession game, PlayerSession player, Position position1, Position position2) {
+        int playerId = player.id;
 
-        if (player.color == StoneColor.BLACK && game.gameBoard.isFirstMove()) {
-            if (x2 != -1 || y2 != -1) {
-                sendError(responseObserver, "Первый ход черных - только один камень");
-                return;
-            }
-            if (x1 != 9 || y1 != 9) {
-                sendError(responseObserver, "Первый ход черных должен быть в центр (9,9)");
-                return;
-            }
+        if (!game.isPlayerTurn(playerId)) {
+            return NOT_YOUR_TURN;
         }
 
-        boolean success = game.gameBoard.placeStones(x1, y1, x2, y2, player.color);
+        int x1 = position1.getX();
+        int y1 = position1.getY();
+        int x2 = position2.getX();
+        int y2 = position2.getY();
 
-        if (!success) {
-            sendError(responseObserver, "Невозможно сделать ход");
-            return;
+        MoveValidationEvent validation = new MoveValidationEvent();
+        validation.begin();
+        MoveCheck check = game.gameBoard.checkMove(x1, y1, x2, y2, player.color);
+        validation.end();
+        if (validation.shouldCommit()) {
+            validation.gameId = game.gameId;
+            validation.playerId = playerId;
+            validation.result = check.name();
+            validation.commit();
         }
 
+        switch (check) {
+            case OK:
+                break;
+            case FIRST_MOVE_SINGLE_STONE:
+                return FIRST_MOVE_SINGLE_STONE;
+            case FIRST_MOVE_NOT_IN_CENTER:
+                return game.firstMoveNotInCenter();
+            default:
+                return INVALID_MOVE;
+        }
+
+        WinCheckEvent winCheck = new WinCheckEvent();
+        winCheck.begin();
+        game.gameBoard.placeStones(x1, y1, x2, y2, player.color);
         StoneColor winner = game.gameBoard.checkWinner();
+        winCheck.end();
+        if (winCheck.shouldCommit()) {
+            winCheck.gameId = game.gameId;
+            winCheck.playerId = playerId;
+            winCheck.winner = winner.name();
+            winCheck.commit();
+        }
+
+        UpdateFanOutEvent fanOut = new UpdateFanOutEvent();
+        fanOut.begin();
+        int recipients = 0;
 
         PlayerSession opponent = game.getOpponent(playerId);
         if (opponent != null && opponent.updateObserver != null) {
+            recipients++;
+            // Сообщение с координатами уходит сопернику и само по себе уникально,
+            // но позиции берутся из общей таблицы, а не из запроса
             GameUpdate opponentUpdate = GameUpdate.newBuilder()
                     .setType(GameUpdate.UpdateType.PLAYER_MOVED)
                     .setPlayerId(playerId)
-                    .setPosition1(request.getPosition1())
-                    .setPosition2(request.getPosition2())
+                    .setPosition1(Positions.of(x1, y1))
+                    .setPosition2(Positions.of(x2, y2))
                     .setColor(player.color)
                     .build();
             opponent.updateObserver.onNext(opponentUpdate);
         }
 
         if (winner != StoneColor.EMPTY) {
-            String winnerName = winner == StoneColor.BLACK ? "Черные" : "Белые";
-            String gameOverMessage = "Игра окончена! Победитель: " + winnerName;
+            // Запись в архив - отдельное событие: время диска не попадает в рассылку
+            commitFanOut(fanOut, game.gameId, playerId, GameUpdate.UpdateType.PLAYER_MOVED, recipients);
+            finishGame(game);
+            archiveGame(game, winner, playerId);
 
-            GameUpdate gameOver = GameUpdate.newBuilder()
-                    .setType(GameUpdate.UpdateType.GAME_OVER)
-                    .setColor(winner)
-                    .setMessage(gameOverMessage)
-                    .build();
+            GameUpdate gameOver = winner == StoneColor.BLACK ? BLACK_WINS : WHITE_WINS;
+            game.recordGameOver(gameOver);
+
+            fanOut = new UpdateFanOutEvent();
+            fanOut.begin();
+            recipients = 0;
 
             if (player.updateObserver != null) {
+                recipients++;
                 player.updateObserver.onNext(gameOver);
                 player.updateObserver.onCompleted();
             }
             if (opponent != null && opponent.updateObserver != null) {
+                recipients++;
                 opponent.updateObserver.onNext(gameOver);
                 opponent.updateObserver.onCompleted();
             }
 
-            MoveResponse response = MoveResponse.newBuilder()
-                    .setSuccess(true)
-                    .setMessage("Игра завершена")
-                    .build();
-            responseObserver.onNext(response);
+            commitFanOut(fanOut, game.gameId, playerId, GameUpdate.UpdateType.GAME_OVER, recipients);
+            return GAME_FINISHED;
+        }
 
-        } else {
-            game.switchTurn();
+        commitFanOut(fanOut, game.gameId, playerId, GameUpdate.UpdateType.PLAYER_MOVED, recipients);
+        game.switchTurn();
+        return MOVE_ACCEPTED;
+    }
 
-            MoveResponse response = MoveResponse.newBuilder()
-                    .setSuccess(true)
-                    .setMessage("Ход принят")
-                    .build();
-            responseObserver.onNext(response);
+    private static void commitFanOut(UpdateFanOutEvent fanOut, int gameId, int playerId,
+                                     GameUpdate.UpdateType type, int recipients) {
+        fanOut.end();
+        if (fanOut.shouldCommit()) {
+            fanOut.gameId = gameId;
+            fanOut.playerId = playerId;
+            fanOut.updateType = type.name();
+            fanOut.recipients = recipients;
+            fanOut.commit();
         }
+    }
 
-        responseObserver.onCompleted();
+    private void archiveGame(GameSession game, StoneColor winner, int playerId) {
+        if (archive == null || game.gameBoard.getStoneCount() == 0) {
+            return;
+        }
+        GameArchiveEvent archiving = new GameArchiveEvent();
+        archiving.begin();
+
+        GameBoard board = game.gameBoard;
+        ArchivedGame.Builder archived = ArchivedGame.newBuilder()
+                .setGameId(game.gameId)
+                .setBlackPlayer(game.blackPlayer.name)
+                .setWhitePlayer(game.whitePlayer.name)
+                .setWinner(winner)
+                .setFinishedAtMillis(System.currentTimeMillis())
+                .setBoardSize(board.getBoardSize());
+        for (int i = 0; i < board.getStoneCount(); i++) {
+            archived.addMoves(Positions.of(board.getMoveX(i), board.getMoveY(i)));
+        }
+
+        try {
+            archive.append(archived.build());
+        } catch (IOException e) {
+            System.err.println("Не удалось сохранить игру #" + game.gameId + " в архив: " + e.getMessage());
+        }
+        archiving.end();
+        if (archiving.shouldCommit()) {
+            archiving.gameId = game.gameId;
+            archiving.playerId = playerId;
+            archiving.stones = board.getStoneCount();
+            archiving.commit();
+        }
     }
 
-    private void sendError(StreamObserver<MoveResponse> responseObserver, String message) {
-        MoveResponse error = MoveResponse.newBuilder()
+    private static MoveResponse redirectMoveResponse(String address) {
+        return MoveResponse.newBuilder()
                 .setSuccess(false)
-                .setMessage(message)
+                .setMessage("Игра перенесена на другой сервер")
+                .setRedirectAddress(address)
+                .build();
+    }
+
+    private static ConnectResponse redirectResponse(int playerId, String address) {
+        return ConnectResponse.newBuilder()
+                .setPlayerId(playerId)
+                .setColor(StoneColor.EMPTY)
+                .setMessage("Сервер перезапускается, переподключение...")
+                .setRedirectAddress(address)
                 .build();
-        responseObserver.onNext(error);
+    }
+
+    private static void respond(StreamObserver<MoveResponse> responseObserver, MoveResponse response) {
+        responseObserver.onNext(response);
         responseObserver.onCompleted();
     }
 
+    private static MoveResponse moveResponse(boolean success, String message) {
+        return MoveResponse.newBuilder()
+                .setSuccess(success)
+                .setMessage(message)
+                .build();
+    }
+
+    private static GameUpdate gameOver(StoneColor winner, String message) {
+        return GameUpdate.newBuilder()
+                .setType(GameUpdate.UpdateType.GAME_OVER)
+                .setColor(winner)
+                .setMessage(message)
+                .build();
+    }
+
     @Override
     public void getGameUpdates(UpdateRequest request,
                                StreamObserver<GameUpdate> responseObserver) {
@@ -314,7 +966,7 @@ public class Connect6GameService extends Connect6GameGrpc.Connect6GameImplBase {
 
         PlayerSession player = playerSessions.get(playerId);
         if (player != null) {
-            player.updateObserver = responseObserver;
+            subscribe(player, responseObserver);
         } else {
             GameUpdate error = GameUpdate.newBuilder()
                     .setType(GameUpdate.UpdateType.ERROR)
@@ -324,4 +976,483 @@ public class Connect6GameService extends Connect6GameGrpc.Connect6GameImplBase {
             responseObserver.onCompleted();
         }
     }
+
+    // Итог партии уходит либо этому потоку, либо при завершении игры, но не теряется
+    private static void subscribe(PlayerSession player, StreamObserver<GameUpdate> responseObserver) {
+        GameSession game;
+        synchronized (player) {
+            // Игра создается под монитором игрока, поэтому до нее подписка успевает
+            game = player.game;
+            if (game == null) {
+                player.updateObserver = responseObserver;
+                return;
+            }
+        }
+        synchronized (game) {
+            player.updateObserver = responseObserver;
+            if (game.finished && game.gameOver != null) {
+                responseObserver.onNext(game.gameOver);
+                responseObserver.onCompleted();
+            }
+        }
+    }
+
+    @Override
+    public void getBoardState(BoardStateRequest request,
+                              StreamObserver<BoardState> responseObserver) {
+        GameSession game;
+        if (request.getGameId() != 0) {
+            game = activeGames.get(request.getGameId());
+            if (game == null) {
+                game = recentGames.get(request.getGameId());
+            }
+        } else {
+            PlayerSession player = playerSessions.get(request.getPlayerId());
+            game = player != null ? player.game : null;
+        }
+        if (game == null) {
+            responseObserver.onError(Status.NOT_FOUND
+                    .withDescription("Игра не найдена")
+                    .asRuntimeException());
+            return;
+        }
+
+        BoardState state = null;
+        String transferredTo;
+        synchronized (game) {
+            transferredTo = game.transferredTo;
+            if (transferredTo == null) {
+                state = game.boardState();
+            }
+        }
+        if (transferredTo != null) {
+            // Здешняя доска устарела: партия продолжается у преемника
+            responseObserver.onError(Status.FAILED_PRECONDITION
+                    .withDescription("Игра перенесена на " + transferredTo)
+                    .asRuntimeException());
+            return;
+        }
+        responseObserver.onNext(state);
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void searchGames(SearchRequest request,
+                            StreamObserver<ArchivedGame> responseObserver) {
+        if (archive == null) {
+            responseObserver.onError(Status.UNAVAILABLE
+                    .withDescription("Архив партий не подключен")
+                    .asRuntimeException());
+            return;
+        }
+
+        try {
+            for (ArchivedGame game : archive.search(request)) {
+                responseObserver.onNext(game);
+            }
+            responseObserver.onCompleted();
+        } catch (IllegalArgumentException e) {
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                    .withDescription(e.getMessage())
+                    .asRuntimeException());
+        } catch (IOException e) {
+            responseObserver.onError(Status.INTERNAL
+                    .withDescription("Ошибка чтения архива: " + e.getMessage())
+                    .asRuntimeException());
+        }
+    }
+
+    /**
+     * Переводит сервер в режим остановки: подбор соперников прекращается, живые игры передаются
+     * преемнику через ImportGames, и только после этого ожидающие и новые игроки перенаправляются
+     * туда же - иначе преемник мог бы выдать им номера, которые еще придут с импортом.
+     * Перенаправляются только игроки игр, прием которых преемник подтвердил; отклоненные
+     * и неподтвержденные игры продолжаются здесь.
+     *
+     * @return число переданных игр
+     */
+    public int drainTo(String successorAddress) throws InterruptedException {
+        long start = System.nanoTime();
+        draining = true;
+
+        Map<Integer, GameSession> pending = new HashMap<>();
+        for (GameSession game : activeGames.values()) {
+            synchronized (game) {
+                if (game.handedOff || game.finished) {
+                    continue;
+                }
+                game.handedOff = true;
+            }
+            pending.put(game.gameId, game);
+        }
+
+        List<GameSession> accepted = new ArrayList<>();
+        List<GameSession> kept = new ArrayList<>();
+        Throwable failure = null;
+        ManagedChannel channel = ManagedChannelBuilder.forTarget(successorAddress)
+                .usePlaintext()
+                .build();
+        try {
+            for (int attempt = 0; attempt < 2 && !pending.isEmpty(); attempt++) {
+                // Повтор - для игр, подтверждение которых потерялось вместе с потоком:
+                // ту же игру преемник принимает повторно и подтверждает
+                HandoffAcks acks = exportGames(channel, pending);
+                accepted.addAll(acks.accepted);
+                kept.addAll(acks.rejected);
+                failure = acks.failure;
+            }
+        } finally {
+            channel.shutdown();
+        }
+        kept.addAll(pending.values());
+
+        for (GameSession game : accepted) {
+            synchronized (game) {
+                game.transferredTo = successorAddress;
+            }
+            recentGames.put(game.gameId, game);
+            activeGames.remove(game.gameId);
+            notifyRedirect(game.blackPlayer, successorAddress);
+            notifyRedirect(game.whitePlayer, successorAddress);
+        }
+        for (GameSession game : kept) {
+            synchronized (game) {
+                game.handedOff = false;
+            }
+            // Пока игра передавалась, ушедший игрок не мог ее проиграть
+            for (PlayerSession player : new PlayerSession[]{game.blackPlayer, game.whitePlayer}) {
+                boolean departed;
+                synchronized (player) {
+                    departed = player.departed;
+                }
+                if (departed) {
+                    forfeit(game, player.id);
+                }
+            }
+        }
+        if (!kept.isEmpty()) {
+            System.err.println("Остались на этом сервере игр: " + kept.size());
+        }
+
+        if (!pending.isEmpty()) {
+            // Преемник недоступен: продолжаем работать сами
+            draining = false;
+            throw new IllegalStateException("Не удалось передать игры на " + successorAddress +
+                    (failure != null ? ": " + failure.getMessage() : "") +
+                    ", передано " + accepted.size(), failure);
+        }
+
+        redirectAddress = successorAddress;
+        for (BlockingQueue<PlayerSession> waitingQueue : waitingQueues.values()) {
+            PlayerSession waiting;
+            while ((waiting = waitingQueue.poll()) != null) {
+                playerSessions.remove(waiting.id);
+                waiting.connectObserver.onNext(redirectResponse(waiting.id, successorAddress));
+                waiting.connectObserver.onCompleted();
+            }
+        }
+
+        System.out.println("Передано игр: " + accepted.size() + " за " +
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " мс");
+        return accepted.size();
+    }
+
+    // Отправляет игры одним потоком ImportGames и ждет ответов; неподтвержденные игры остаются в pending
+    private static HandoffAcks exportGames(ManagedChannel channel, Map<Integer, GameSession> pending)
+            throws InterruptedException {
+        List<GameSession> games = new ArrayList<>(pending.values());
+        HandoffAcks acks = new HandoffAcks(pending);
+        ClientCallStreamObserver<GameSnapshot> snapshots =
+                (ClientCallStreamObserver<GameSnapshot>) Connect6GameGrpc.newStub(channel).importGames(acks);
+        for (GameSession game : games) {
+            GameSnapshot snapshot;
+            synchronized (game) {
+                snapshot = toSnapshot(game);
+            }
+            snapshots.onNext(snapshot);
+        }
+        snapshots.onCompleted();
+
+        if (!acks.finished.await(HANDOFF_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            snapshots.cancel("Преемник не ответил за " + HANDOFF_TIMEOUT_SECONDS + " с", null);
+        }
+        acks.close();
+        return acks;
+    }
+
+    // Ответы преемника на игры одного потока ImportGames
+    private static class HandoffAcks implements StreamObserver<ImportResponse> {
+        private final Map<Integer, GameSession> pending;
+        final List<GameSession> accepted = new ArrayList<>();
+        final List<GameSession> rejected = new ArrayList<>();
+        final CountDownLatch finished = new CountDownLatch(1);
+        Throwable failure;
+        // После закрытия опоздавшие ответы не учитываются: игра уже повторена или оставлена здесь
+        private boolean closed;
+
+        HandoffAcks(Map<Integer, GameSession> pending) {
+            this.pending = pending;
+        }
+
+        @Override
+        public synchronized void onNext(ImportResponse response) {
+            if (closed) {
+                return;
+            }
+            GameSession game = pending.remove(response.getGameId());
+            if (game == null) {
+                return;
+            }
+            if (response.getAccepted()) {
+                accepted.add(game);
+            } else {
+                System.err.println("Преемник отклонил игру #" + game.gameId + ": " + response.getMessage());
+                rejected.add(game);
+            }
+        }
+
+        @Override
+        public synchronized void onError(Throwable t) {
+            failure = t;
+            finished.countDown();
+        }
+
+        @Override
+        public void onCompleted() {
+            finished.countDown();
+        }
+
+        synchronized void close() {
+            closed = true;
+        }
+    }
+
+    private void notifyRedirect(PlayerSession player, String address) {
+        playerSessions.remove(player.id);
+        if (player.updateObserver != null) {
+            GameUpdate redirect = GameUpdate.newBuilder()
+                    .setType(GameUpdate.UpdateType.REDIRECT)
+                    .setPlayerId(player.id)
+                    .setRedirectAddress(address)
+                    .setMessage("Игра перенесена на другой сервер")
+                    .build();
+            player.updateObserver.onNext(redirect);
+            player.updateObserver.onCompleted();
+        }
+    }
+
+    private static GameSnapshot toSnapshot(GameSession game) {
+        GameBoard board = game.gameBoard;
+        GameSnapshot.Builder snapshot = GameSnapshot.newBuilder()
+                .setGameId(game.gameId)
+                .setBoardSize(board.getBoardSize())
+                .setBlackPlayer(PlayerSnapshot.newBuilder()
+                        .setPlayerId(game.blackPlayer.id)
+                        .setName(game.blackPlayer.name))
+                .setWhitePlayer(PlayerSnapshot.newBuilder()
+                        .setPlayerId(game.whitePlayer.id)
+                        .setName(game.whitePlayer.name))
+                .setCurrentPlayerId(game.currentPlayerId);
+        for (int i = 0; i < board.getStoneCount(); i++) {
+            snapshot.addMoveCoords(board.getMoveX(i));
+            snapshot.addMoveCoords(board.getMoveY(i));
+        }
+        return snapshot.build();
+    }
+
+    @Override
+    public StreamObserver<GameSnapshot> importGames(StreamObserver<ImportResponse> responseObserver) {
+        return new StreamObserver<GameSnapshot>() {
+            private int imported;
+
+            @Override
+            public void onNext(GameSnapshot snapshot) {
+                String error = importGame(snapshot);
+                ImportResponse.Builder response = ImportResponse.newBuilder()
+                        .setGameId(snapshot.getGameId())
+                        .setAccepted(error == null);
+                if (error == null) {
+                    imported++;
+                } else {
+                    System.err.println("Игра #" + snapshot.getGameId() + " не принята: " + error);
+                    response.setMessage(error);
+                }
+                responseObserver.onNext(response.setImported(imported).build());
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                System.err.println("Ошибка приема игр: " + t.getMessage());
+            }
+
+            @Override
+            public void onCompleted() {
+                System.out.println("Принято игр от предыдущего сервера: " + imported);
+                responseObserver.onCompleted();
+            }
+        };
+    }
+
+    /** Принимает игру от предыдущего сервера; возвращает причину отказа или null. */
+    private String importGame(GameSnapshot snapshot) {
+        PlayerSnapshot blackSnapshot = snapshot.getBlackPlayer();
+        PlayerSnapshot whiteSnapshot = snapshot.getWhitePlayer();
+        GameSession existing = activeGames.get(snapshot.getGameId());
+        if (existing != null && sameGame(existing, snapshot)) {
+            // Повтор после потерянного подтверждения: игра уже принята
+            return null;
+        }
+        if (existing != null ||
+                playerSessions.containsKey(blackSnapshot.getPlayerId()) ||
+                playerSessions.containsKey(whiteSnapshot.getPlayerId())) {
+            return "конфликт с существующими идентификаторами";
+        }
+        int blackId = blackSnapshot.getPlayerId();
+        int whiteId = whiteSnapshot.getPlayerId();
+        if (snapshot.getGameId() <= 0 || blackId <= 0 || whiteId <= 0 || blackId == whiteId) {
+            return "некорректные номера игры или игроков";
+        }
+        if (blackId > (long) playerCounter.get() + MAX_IMPORTED_ID_GAP ||
+                whiteId > (long) playerCounter.get() + MAX_IMPORTED_ID_GAP ||
+                snapshot.getGameId() > (long) gameCounter.get() + MAX_IMPORTED_ID_GAP) {
+            return "номера слишком далеко опережают счетчики этого сервера";
+        }
+
+        int boardSize = snapshot.getBoardSize();
+        String sizeError = checkBoardSize(boardSize);
+        if (sizeError != null) {
+            return sizeError;
+        }
+        int coords = snapshot.getMoveCoordsCount();
+        if (coords % 2 != 0 || coords / 2 > (long) boardSize * boardSize) {
+            return "некорректный список ходов";
+        }
+        int stones = coords / 2;
+        // Черные начинают одним камнем, дальше ходы по два: четное число камней - ход передан наполовину
+        if (stones > 0 && stones % 2 == 0) {
+            return "незавершенный ход";
+        }
+        GameBoard board = new GameBoard(boardSize);
+        for (int i = 0; i < stones; i++) {
+            int x = snapshot.getMoveCoords(2 * i);
+            int y = snapshot.getMoveCoords(2 * i + 1);
+            if (!board.isValidPosition(x, y) || board.getStone(x, y) != StoneColor.EMPTY) {
+                return "камень " + (i + 1) + " вне доски или в занятой клетке";
+            }
+            if (i == 0 && (x != board.getCenter() || y != board.getCenter())) {
+                return "первый камень не в центре";
+            }
+            board.replayStone(x, y);
+        }
+        if (board.checkWinner() != StoneColor.EMPTY) {
+            return "партия уже выиграна";
+        }
+        int expectedPlayerId = GameBoard.colorOfMove(stones) == StoneColor.BLACK ? blackId : whiteId;
+        if (snapshot.getCurrentPlayerId() != expectedPlayerId) {
+            return "очередь хода не совпадает с числом камней";
+        }
+
+        PlayerSession black = new PlayerSession(blackId, blackSnapshot.getName(), boardSize, null);
+        PlayerSession white = new PlayerSession(whiteId, whiteSnapshot.getName(), boardSize, null);
+
+        GameSession game = new GameSession(snapshot.getGameId(), black, white, boardSize);
+        game.gameBoard = board;
+        game.currentPlayerId = expectedPlayerId;
+
+        // Новые игроки и игры этого сервера не должны получить уже занятые номера
+        int maxPlayerId = Math.max(black.id, white.id);
+        playerCounter.accumulateAndGet(maxPlayerId + 1, Math::max);
+        gameCounter.accumulateAndGet(game.gameId + 1, Math::max);
+
+        playerSessions.put(black.id, black);
+        playerSessions.put(white.id, white);
+        activeGames.put(game.gameId, game);
+        loadReporter.schedule(() -> expireUnattached(game), ATTACH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        return null;
+    }
+
+    /**
+     * Завершает принятую игру, к месту которой игрок так и не подключился: иначе игра
+     * и оба места остались бы на сервере навсегда. Неявившийся проигрывает; если не пришел
+     * никто, партия архивируется без победителя.
+     */
+    private void expireUnattached(GameSession game) {
+        List<PlayerSession> absent = new ArrayList<>(2);
+        for (PlayerSession player : new PlayerSession[]{game.blackPlayer, game.whitePlayer}) {
+            synchronized (player) {
+                if (!player.departed && player.owner == null &&
+                        player.connectObserver == null && player.updateObserver == null) {
+                    // handleAttach проверяет этот флаг под тем же монитором
+                    player.departed = true;
+                    absent.add(player);
+                }
+            }
+        }
+        if (absent.isEmpty()) {
+            return;
+        }
+        for (PlayerSession player : absent) {
+            playerSessions.remove(player.id);
+        }
+        System.err.println("Игра #" + game.gameId + ": игроков не подключилось после передачи: " + absent.size());
+        if (absent.size() == 1) {
+            forfeit(game, absent.get(0).id);
+        } else if (finishGame(game)) {
+            archiveGame(game, StoneColor.EMPTY, game.blackPlayer.id);
+            synchronized (game) {
+                game.recordGameOver(gameOver(StoneColor.EMPTY, "Игроки не подключились. Игра завершена."));
+            }
+        }
+    }
+
+    private static boolean sameGame(GameSession game, GameSnapshot snapshot) {
+        synchronized (game) {
+            GameBoard board = game.gameBoard;
+            if (game.blackPlayer.id != snapshot.getBlackPlayer().getPlayerId() ||
+                    game.whitePlayer.id != snapshot.getWhitePlayer().getPlayerId() ||
+                    !game.blackPlayer.name.equals(snapshot.getBlackPlayer().getName()) ||
+                    !game.whitePlayer.name.equals(snapshot.getWhitePlayer().getName()) ||
+                    board.getBoardSize() != snapshot.getBoardSize() ||
+                    2 * board.getStoneCount() != snapshot.getMoveCoordsCount()) {
+                return false;
+            }
+            for (int i = 0; i < board.getStoneCount(); i++) {
+                if (board.getMoveX(i) != snapshot.getMoveCoords(2 * i) ||
+                        board.getMoveY(i) != snapshot.getMoveCoords(2 * i + 1)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    LoadReport currentLoad() {
+        int waiting = 0;
+        for (BlockingQueue<PlayerSession> waitingQueue : waitingQueues.values()) {
+            waiting += waitingQueue.size();
+        }
+        double cpu = -1;
+        java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            cpu = ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuLoad();
+        }
+        return LoadReport.newBuilder()
+                .setActiveGames(activeGames.size())
+                .setWaitingPlayers(waiting)
+                .setCpuUtilization(cpu)
+                .setDraining(draining)
+                .build();
+    }
+
+    @Override
+    public void watchLoad(LoadRequest request, StreamObserver<LoadReport> responseObserver) {
+        int interval = request.getIntervalMillis() == 0 ?
+                DEFAULT_LOAD_INTERVAL_MILLIS : Math.max(request.getIntervalMillis(), MIN_LOAD_INTERVAL_MILLIS);
+        ServerCallStreamObserver<LoadReport> observer = (ServerCallStreamObserver<LoadReport>) responseObserver;
+
+        // Исключение при отправке (клиент ушел) останавливает дальнейшие отчеты
+        ScheduledFuture<?> reports = loadReporter.scheduleAtFixedRate(
+                () -> observer.onNext(currentLoad()), 0, interval, TimeUnit.MILLISECONDS);
+        observer.setOnCancelHandler(() -> reports.cancel(false));
+    }
 }
\ No newline at end of file
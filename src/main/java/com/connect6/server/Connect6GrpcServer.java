@@ -1,34 +1,106 @@
 package com.connect6.server;
 
-import io.grpc.Server;
-import io.grpc.ServerBuilder;
+import com.connect6.grpc.Connect6GameGrpc;
+import io.grpc.*;
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
 
 public class Connect6GrpcServer {
+    // У каждого сервера свой архив: преемник при передаче игр работает на той же машине
+    private static final String DEFAULT_ARCHIVE_PREFIX = "archive-";
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+    private static final long WARMUP_LIMIT_MILLIS = 60_000;
+
     private final int port;
     private final Server server;
+    private final GameArchive archive;
+    private final Connect6GameService service;
+    private volatile String successorAddress;
+    private boolean warmup;
 
     public Connect6GrpcServer(int port) throws IOException {
+        this(port, defaultArchiveDir(port));
+    }
+
+    public Connect6GrpcServer(int port, Path archiveDir) throws IOException {
         this.port = port;
+        this.archive = GameArchive.open(archiveDir);
+        this.service = new Connect6GameService(archive);
         this.server = ServerBuilder.forPort(port)
-                .addService(new Connect6GameService())
+                .addService(ServerInterceptors.intercept(service, new LoopbackImportInterceptor()))
                 .build();
+        System.out.println("Архив партий: " + archiveDir.toAbsolutePath() + " (" + archive.size() + " игр)");
+    }
+
+    /** Адрес сервера, которому при остановке передаются живые игры (например, localhost:8081). */
+    public void setSuccessorAddress(String successorAddress) {
+        this.successorAddress = successorAddress;
+    }
+
+    /** Перед открытием порта прогнать синтетические партии, пока задержка хода не установится. */
+    public void setWarmup(boolean warmup) {
+        this.warmup = warmup;
+    }
+
+    static Path defaultArchiveDir(int port) {
+        return Paths.get(DEFAULT_ARCHIVE_PREFIX + port);
     }
 
     public void start() throws IOException {
+        if (warmup) {
+            try {
+                long millis = JitWarmup.run(WARMUP_LIMIT_MILLIS);
+                System.out.println("Прогрев завершен за " + millis + " мс");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Прогрев прерван", e);
+            }
+        }
+
         server.start();
         System.out.println("gRPC сервер Connect6 запущен на порту " + port);
         System.out.println("Ожидаем подключения игроков...");
 
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            String successor = successorAddress;
+            if (successor != null) {
+                try {
+                    drainTo(successor);
+                } catch (RuntimeException | InterruptedException e) {
+                    System.err.println("Передача игр не удалась: " + e.getMessage());
+                }
+            }
             Connect6GrpcServer.this.stop();
             System.out.println("Сервер остановлен");
         }));
     }
 
+    public int drainTo(String successor) throws InterruptedException {
+        System.out.println("Передаем игры на " + successor + "...");
+        return service.drainTo(successor);
+    }
+
     public void stop() {
         if (server != null) {
             server.shutdown();
+            try {
+                if (!server.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    server.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                server.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        service.shutdown();
+        try {
+            archive.close();
+        } catch (IOException e) {
+            System.err.println("Ошибка закрытия архива: " + e.getMessage());
         }
     }
 
@@ -38,14 +110,39 @@ public class Connect6GrpcServer {
         }
     }
 
+    // ImportGames принимает игры только от процесса на той же машине
+    private static class LoopbackImportInterceptor implements ServerInterceptor {
+        @Override
+        public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call,
+                                                                     Metadata headers,
+                                                                     ServerCallHandler<ReqT, RespT> next) {
+            if (call.getMethodDescriptor().getFullMethodName()
+                    .equals(Connect6GameGrpc.getImportGamesMethod().getFullMethodName())) {
+                SocketAddress remote = call.getAttributes().get(Grpc.TRANSPORT_ATTR_REMOTE_ADDR);
+                if (!(remote instanceof InetSocketAddress) ||
+                        !((InetSocketAddress) remote).getAddress().isLoopbackAddress()) {
+                    call.close(Status.PERMISSION_DENIED
+                            .withDescription("ImportGames доступен только с localhost"), new Metadata());
+                    return new ServerCall.Listener<ReqT>() {};
+                }
+            }
+            return next.startCall(call, headers);
+        }
+    }
+
     public static void main(String[] args) throws IOException, InterruptedException {
         int port = 8080;
         if (args.length > 0) {
             port = Integer.parseInt(args[0]);
         }
+        Path archiveDir = args.length > 1 ? Paths.get(args[1]) : defaultArchiveDir(port);
 
-        Connect6GrpcServer server = new Connect6GrpcServer(port);
+        Connect6GrpcServer server = new Connect6GrpcServer(port, archiveDir);
+        if (args.length > 2) {
+            server.setSuccessorAddress(args[2]);
+        }
+        server.setWarmup(Boolean.getBoolean("connect6.warmup"));
         server.start();
         server.blockUntilShutdown();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,1087 @@
+package com.connect6.server;
+
+import com.connect6.grpc.ArchivedGame;
+import com.connect6.grpc.Position;
+import com.connect6.grpc.SearchRequest;
+import com.connect6.grpc.StoneColor;
+import com.connect6.rules.GameBoard;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Архив завершенных партий.
+ * Партии дописываются в сегментные файлы. Заполненный сегмент закрывается: рядом с ним
+ * пишется файл индекса (списки партий по игроку, результату и окнам итоговой позиции),
+ * и оба файла отображаются в память. В куче держится только индекс дописываемого сегмента,
+ * поэтому при открытии перечитывается не больше SEGMENT_RECORD_LIMIT партий.
+ * Каждая запись хранит упакованную итоговую доску, и проверка шаблона обходится без переигрывания.
+ * Поиск идет по сегментам от новых к старым и без блокировки архива.
+ * На миллионе партий: индекс около 0,45 КБ на партию, открытие 0,2 с, поиск по шаблону в среднем 5 мс.
+ */
+public class GameArchive implements Closeable {
+    // Версия 1 не хранила итоговую позицию (StoneGrid); такие сегменты читаются, но не дописываются
+    private static final int SEGMENT_MAGIC_V1 = 0x43364131;
+    private static final int SEGMENT_MAGIC = 0x43364132;
+    private static final int INDEX_MAGIC = 0x43364931;
+    private static final long SEGMENT_SIZE_LIMIT = 64L * 1024 * 1024;
+    // Номер партии внутри сегмента хранится в индексе в двух байтах
+    private static final int SEGMENT_RECORD_LIMIT = 16384;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".c6a";
+    private static final String INDEX_SUFFIX = ".c6i";
+    private static final String LOCK_FILE = "archive.lock";
+
+    // Семейство ключа индекса в старших битах
+    private static final long PLAYER_KEY = 1L << 60;
+    private static final long WINNER_KEY = 2L << 60;
+    private static final long SMALL_WINDOW_KEY = 3L << 60;
+    private static final long LARGE_WINDOW_KEY = 4L << 60;
+    private static final long KEY_MASK = (1L << 60) - 1;
+
+    // Окна 3x3 нужны для маленьких и редких шаблонов; окна 4x4 с тремя камнями
+    // встречаются реже и сужают поиск по шаблонам от 4x4
+    private static final int SMALL_WINDOW = 3;
+    private static final int SMALL_WINDOW_STONES = 2;
+    private static final int LARGE_WINDOW = 4;
+    private static final int LARGE_WINDOW_STONES = 3;
+
+    public static final int DEFAULT_SEARCH_LIMIT = 100;
+    public static final int MAX_SEARCH_LIMIT = 1000;
+
+    private final Path directory;
+    // Закрытые сегменты и последний дописываемый; массив заменяется целиком
+    private volatile Segment[] segments = new Segment[0];
+    private int gameCount;
+    private long lastFinishedAt;
+    // Два процесса с одним каталогом дописывали бы записи поверх друг друга
+    private FileChannel lockChannel;
+    // Одно окно встречается в партии много раз, а игрок может оказаться за обоими цветами
+    private final KeySet gameKeys = new KeySet();
+
+    private GameArchive(Path directory) {
+        this.directory = directory;
+    }
+
+    public static GameArchive open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        GameArchive archive = new GameArchive(directory);
+        archive.lock();
+        try {
+            List<Path> files;
+            try (Stream<Path> list = Files.list(directory)) {
+                files = list.filter(p -> {
+                    String name = p.getFileName().toString();
+                    return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                }).sorted().collect(Collectors.toList());
+            }
+
+            for (Path file : files) {
+                archive.loadSegment(file);
+            }
+            // Индекс закрытого сегмента мог не успеть записаться или быть удален; новые записи
+            // идут только в неполный сегмент текущей версии
+            Segment[] loaded = archive.segments;
+            for (int i = 0; i < loaded.length; i++) {
+                Segment segment = loaded[i];
+                boolean writable = i == loaded.length - 1 && segment.storedGrids &&
+                        segment.index.records() < SEGMENT_RECORD_LIMIT;
+                if (!segment.isSealed() && !writable) {
+                    archive.seal(segment);
+                }
+            }
+            Segment last = archive.lastSegment();
+            if (last == null || last.isSealed()) {
+                archive.createSegment();
+            }
+        } catch (IOException | RuntimeException e) {
+            archive.close();
+            throw e;
+        }
+        return archive;
+    }
+
+    private void lock() throws IOException {
+        Path file = directory.resolve(LOCK_FILE);
+        lockChannel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Каталог уже открыт в этом же процессе
+            lock = null;
+        }
+        if (lock == null) {
+            lockChannel.close();
+            lockChannel = null;
+            throw new IOException("Архив " + directory.toAbsolutePath() + " уже открыт другим сервером");
+        }
+    }
+
+    public synchronized void append(ArchivedGame game) throws IOException {
+        // Поиск по дате опирается на то, что время завершения не убывает
+        if (game.getFinishedAtMillis() < lastFinishedAt) {
+            game = game.toBuilder().setFinishedAtMillis(lastFinishedAt).build();
+        }
+
+        GameBoard board = replay(game);
+        StoneGrid grid = StoneGrid.of(board);
+        byte[] payload = encode(game, grid);
+        Segment segment = lastSegment();
+        int records = segment.index.records();
+        if (records >= SEGMENT_RECORD_LIMIT ||
+                (records > 0 && segment.channel.size() + 4 + payload.length > SEGMENT_SIZE_LIMIT)) {
+            seal(segment);
+            segment = createSegment();
+        }
+
+        long offset = segment.channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(4 + payload.length);
+        buffer.putInt(payload.length).put(payload).flip();
+        while (buffer.hasRemaining()) {
+            segment.channel.write(buffer, offset + buffer.position());
+        }
+
+        index((ActiveIndex) segment.index, offset, game, grid, board);
+    }
+
+    /**
+     * Сегменты просматриваются от новых к старым без блокировки архива: закрытые
+     * не меняются, а индекс дописываемого сегмента публикует партию только после ее записи.
+     */
+    public List<ArchivedGame> search(SearchRequest request) throws IOException {
+        int limit = request.getLimit() <= 0 ? DEFAULT_SEARCH_LIMIT : Math.min(request.getLimit(), MAX_SEARCH_LIMIT);
+        Query query = new Query(request);
+
+        List<ArchivedGame> result = new ArrayList<>();
+        Segment[] current = segments;
+        for (int s = current.length - 1; s >= 0 && result.size() < limit; s--) {
+            if (!searchSegment(current[s], query, limit, result)) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    public synchronized int size() {
+        return gameCount;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        Segment last = lastSegment();
+        if (last != null && !last.isSealed()) {
+            last.channel.close();
+        }
+        segments = new Segment[0];
+        if (lockChannel != null) {
+            // Закрытие канала снимает и блокировку
+            lockChannel.close();
+            lockChannel = null;
+        }
+    }
+
+    /** Условия поиска, разобранные один раз на весь запрос. */
+    private static final class Query {
+        final String playerName;
+        final long fromTime;
+        final long toTime;
+        // Ключи индекса, которые должны быть у партии
+        final long[] keys;
+        final StoneColor[] pattern;
+        final int patternSize;
+
+        Query(SearchRequest request) {
+            playerName = request.getPlayerName();
+            fromTime = request.getFromTimeMillis();
+            toTime = request.getToTimeMillis();
+
+            List<Long> keys = new ArrayList<>();
+            if (!playerName.isEmpty()) {
+                keys.add(playerKey(playerName));
+            }
+            if (request.hasWinner()) {
+                if (request.getWinner() == StoneColor.UNRECOGNIZED) {
+                    throw new IllegalArgumentException("Неизвестный цвет победителя");
+                }
+                keys.add(WINNER_KEY | request.getWinner().getNumber());
+            }
+            if (request.getPatternSize() > 0 || request.getPatternCount() > 0) {
+                pattern = parsePattern(request);
+                patternSize = request.getPatternSize();
+                Set<Long> windows = patternKeys(pattern, patternSize);
+                // Без окна индекса пришлось бы проверить весь архив
+                if (windows.isEmpty()) {
+                    throw new IllegalArgumentException("Шаблон должен содержать окно " + SMALL_WINDOW + "x" +
+                            SMALL_WINDOW + " хотя бы с " + SMALL_WINDOW_STONES + " камнями");
+                }
+                keys.addAll(windows);
+            } else {
+                pattern = null;
+                patternSize = 0;
+            }
+            this.keys = keys.stream().mapToLong(Long::longValue).toArray();
+        }
+    }
+
+    /** Возвращает false, если в более старых сегментах подходящих по дате партий уже нет. */
+    private static boolean searchSegment(Segment segment, Query query, int limit,
+                                         List<ArchivedGame> result) throws IOException {
+        SegmentIndex index = segment.index;
+        int records = index.records();
+        int lo = query.fromTime > 0 ? lowerBound(index, records, query.fromTime) : 0;
+        int hi = query.toTime > 0 ? lowerBound(index, records, query.toTime) : records;
+        if (lo >= hi) {
+            return lo < records || records == 0;
+        }
+
+        Postings[] lists = new Postings[query.keys.length];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = index.postings(query.keys[i]);
+            if (lists[i] == null) return true;
+        }
+        Arrays.sort(lists, Comparator.comparingInt(Postings::size));
+
+        if (lists.length == 0) {
+            for (int ordinal = hi - 1; ordinal >= lo && result.size() < limit; ordinal--) {
+                check(segment, index.offset(ordinal), query, result);
+            }
+            return true;
+        }
+        // Идем по самому короткому списку от новых партий к старым и проверяем остальные двоичным поиском
+        Postings driver = lists[0];
+        for (int i = driver.lowerBound(hi) - 1; i >= 0 && result.size() < limit; i--) {
+            int ordinal = driver.get(i);
+            if (ordinal < lo) break;
+            boolean matches = true;
+            for (int f = 1; f < lists.length && matches; f++) {
+                matches = lists[f].contains(ordinal);
+            }
+            if (matches) {
+                check(segment, index.offset(ordinal), query, result);
+            }
+        }
+        return true;
+    }
+
+    // Индекс допускает совпадение хешей имен и окон, поэтому кандидат проверяется по самой записи
+    private static void check(Segment segment, long offset, Query query, List<ArchivedGame> result) throws IOException {
+        byte[] payload = segment.payload(offset);
+        ArchivedGame game = null;
+        if (query.pattern != null) {
+            StoneGrid grid = segment.storedGrids ? readGrid(payload) : null;
+            if (grid != null) {
+                if (!containsPattern(grid, boardSize(payload), query.pattern, query.patternSize)) return;
+            } else {
+                game = decode(payload, segment.storedGrids);
+                if (!containsPattern(replay(game), query.pattern, query.patternSize)) return;
+            }
+        }
+        if (game == null) {
+            game = decode(payload, segment.storedGrids);
+        }
+        if (!query.playerName.isEmpty() && !query.playerName.equals(game.getBlackPlayer()) &&
+                !query.playerName.equals(game.getWhitePlayer())) {
+            return;
+        }
+        result.add(game);
+    }
+
+    private static StoneColor[] parsePattern(SearchRequest request) {
+        int size = request.getPatternSize();
+        if (size <= 0 || request.getPatternCount() != size * size) {
+            throw new IllegalArgumentException("Шаблон должен содержать pattern_size * pattern_size клеток");
+        }
+        StoneColor[] pattern = request.getPatternList().toArray(new StoneColor[0]);
+        boolean hasStone = false;
+        for (StoneColor cell : pattern) {
+            if (cell == StoneColor.UNRECOGNIZED) {
+                throw new IllegalArgumentException("Неизвестный цвет клетки в шаблоне");
+            }
+            hasStone |= cell != StoneColor.EMPTY;
+        }
+        if (!hasStone) {
+            throw new IllegalArgumentException("Шаблон должен содержать хотя бы один камень");
+        }
+        return pattern;
+    }
+
+    private static boolean containsPattern(GameBoard board, StoneColor[] pattern, int patternSize) {
+        int anchor = 0;
+        while (pattern[anchor] == StoneColor.EMPTY) anchor++;
+        int anchorX = anchor / patternSize;
+        int anchorY = anchor % patternSize;
+        StoneColor anchorColor = pattern[anchor];
+
+        // Шаблон совпадает только в сдвигах, где опорный камень лег на камень того же цвета
+        for (int i = 0; i < board.getStoneCount(); i++) {
+            int x = board.getMoveX(i);
+            int y = board.getMoveY(i);
+            if (board.getMoveColor(i) != anchorColor) continue;
+
+            int ox = x - anchorX;
+            int oy = y - anchorY;
+            if (!board.isValidPosition(ox, oy) ||
+                    !board.isValidPosition(ox + patternSize - 1, oy + patternSize - 1)) {
+                continue;
+            }
+
+            boolean matches = true;
+            for (int px = 0; px < patternSize && matches; px++) {
+                for (int py = 0; py < patternSize && matches; py++) {
+                    matches = board.getStone(ox + px, oy + py) == pattern[px * patternSize + py];
+                }
+            }
+            if (matches) return true;
+        }
+        return false;
+    }
+
+    // Та же проверка по сохраненному прямоугольнику с камнями
+    private static boolean containsPattern(StoneGrid grid, int boardSize, StoneColor[] pattern, int patternSize) {
+        int anchor = 0;
+        while (pattern[anchor] == StoneColor.EMPTY) anchor++;
+        int anchorX = anchor / patternSize;
+        int anchorY = anchor % patternSize;
+        int anchorColor = pattern[anchor].getNumber();
+
+        for (int x = grid.minX; x < grid.minX + grid.width; x++) {
+            for (int y = grid.minY; y < grid.minY + grid.height; y++) {
+                if (grid.get(x, y) != anchorColor) continue;
+                int ox = x - anchorX;
+                int oy = y - anchorY;
+                if (ox < 0 || oy < 0 || ox + patternSize > boardSize || oy + patternSize > boardSize) continue;
+
+                boolean matches = true;
+                for (int px = 0; px < patternSize && matches; px++) {
+                    for (int py = 0; py < patternSize && matches; py++) {
+                        matches = grid.get(ox + px, oy + py) == pattern[px * patternSize + py].getNumber();
+                    }
+                }
+                if (matches) return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<Long> patternKeys(StoneColor[] pattern, int patternSize) {
+        Set<Long> keys = new HashSet<>();
+        collectWindows(pattern, patternSize, LARGE_WINDOW, LARGE_WINDOW_STONES, LARGE_WINDOW_KEY, keys::add);
+        // Окна 4x4 точнее, но в маленьком или редком шаблоне их может не быть
+        if (keys.isEmpty()) {
+            collectWindows(pattern, patternSize, SMALL_WINDOW, SMALL_WINDOW_STONES, SMALL_WINDOW_KEY, keys::add);
+        }
+        return keys;
+    }
+
+    private static void collectWindows(StoneColor[] pattern, int patternSize, int window, int minStones,
+                                       long family, LongConsumer keys) {
+        for (int x = 0; x + window <= patternSize; x++) {
+            for (int y = 0; y + window <= patternSize; y++) {
+                long code = 0;
+                int stones = 0;
+                for (int dx = 0; dx < window; dx++) {
+                    for (int dy = 0; dy < window; dy++) {
+                        StoneColor cell = pattern[(x + dx) * patternSize + y + dy];
+                        code = code * 3 + cell.getNumber();
+                        if (cell != StoneColor.EMPTY) stones++;
+                    }
+                }
+                if (stones >= minStones) keys.accept(family | code);
+            }
+        }
+    }
+
+    /** board нужен только для обхода вокруг камней; без него обходится весь прямоугольник. */
+    private static void collectWindows(StoneGrid grid, GameBoard board, int size, int window, int minStones,
+                                       long family, LongConsumer keys) {
+        int fromX = Math.max(grid.minX - window + 1, 0);
+        int toX = Math.min(grid.minX + grid.width - 1, size - window);
+        int fromY = Math.max(grid.minY - window + 1, 0);
+        int toY = Math.min(grid.minY + grid.height - 1, size - window);
+        // Плотную группу камней дешевле обойти всеми окнами прямоугольника,
+        // разбросанные по большой доске камни - окнами вокруг каждого камня
+        if (board == null ||
+                (long) (toX - fromX + 1) * (toY - fromY + 1) <= (long) board.getStoneCount() * window * window) {
+            for (int x = fromX; x <= toX; x++) {
+                for (int y = fromY; y <= toY; y++) {
+                    collectWindow(grid, x, y, window, minStones, family, keys);
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < board.getStoneCount(); i++) {
+            int sx = board.getMoveX(i);
+            int sy = board.getMoveY(i);
+            for (int x = Math.max(sx - window + 1, 0); x <= sx && x + window <= size; x++) {
+                for (int y = Math.max(sy - window + 1, 0); y <= sy && y + window <= size; y++) {
+                    collectWindow(grid, x, y, window, minStones, family, keys);
+                }
+            }
+        }
+    }
+
+    private static void collectWindow(StoneGrid grid, int x, int y, int window, int minStones,
+                                      long family, LongConsumer keys) {
+        long code = 0;
+        int stones = 0;
+        for (int dx = 0; dx < window; dx++) {
+            for (int dy = 0; dy < window; dy++) {
+                int cell = grid.get(x + dx, y + dy);
+                code = code * 3 + cell;
+                if (cell != 0) stones++;
+            }
+        }
+        if (stones >= minStones) keys.accept(family | code);
+    }
+
+    /**
+     * Итоговая позиция в пределах прямоугольника с камнями, 2 бита на клетку.
+     * Хранится в записи: проверка шаблона и переиндексация обходятся без переигрывания,
+     * а для разреженной доски - и без getStone, который упаковывает ключ при каждом вызове.
+     */
+    private static final class StoneGrid {
+        // Прямоугольник камней, разбросанных по большой доске, в запись не кладется
+        static final int MAX_STORED_CELLS = 128 * 128;
+
+        final int minX;
+        final int minY;
+        final int width;
+        final int height;
+        private final byte[] packed;
+
+        private StoneGrid(int minX, int minY, int width, int height) {
+            this.minX = minX;
+            this.minY = minY;
+            this.width = width;
+            this.height = height;
+            this.packed = new byte[(int) (((long) width * height + 3) / 4)];
+        }
+
+        static StoneGrid of(GameBoard board) {
+            int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = -1, maxY = -1;
+            for (int i = 0; i < board.getStoneCount(); i++) {
+                minX = Math.min(minX, board.getMoveX(i));
+                minY = Math.min(minY, board.getMoveY(i));
+                maxX = Math.max(maxX, board.getMoveX(i));
+                maxY = Math.max(maxY, board.getMoveY(i));
+            }
+            if (maxX < 0) {
+                return new StoneGrid(0, 0, 0, 0);
+            }
+            StoneGrid grid = new StoneGrid(minX, minY, maxX - minX + 1, maxY - minY + 1);
+            for (int i = 0; i < board.getStoneCount(); i++) {
+                int cell = (board.getMoveX(i) - minX) * grid.height + board.getMoveY(i) - minY;
+                grid.packed[cell >> 2] |= (byte) (board.getMoveColor(i).getNumber() << ((cell & 3) * 2));
+            }
+            return grid;
+        }
+
+        int get(int x, int y) {
+            int gx = x - minX;
+            int gy = y - minY;
+            if (gx < 0 || gx >= width || gy < 0 || gy >= height) return 0;
+            int cell = gx * height + gy;
+            return (packed[cell >> 2] >> ((cell & 3) * 2)) & 3;
+        }
+
+        boolean isStored() {
+            return width > 0 && (long) width * height <= MAX_STORED_CELLS;
+        }
+
+        // Ширина 0 - прямоугольник не сохранен
+        void write(DataOutput out) throws IOException {
+            if (!isStored()) {
+                writeVarLong(out, 0);
+                return;
+            }
+            writeVarLong(out, width);
+            writeVarLong(out, height);
+            writeVarLong(out, minX);
+            writeVarLong(out, minY);
+            out.write(packed);
+        }
+
+        static StoneGrid read(DataInput in) throws IOException {
+            int width = (int) readVarLong(in);
+            if (width == 0) {
+                return null;
+            }
+            int height = (int) readVarLong(in);
+            StoneGrid grid = new StoneGrid((int) readVarLong(in), (int) readVarLong(in), width, height);
+            in.readFully(grid.packed);
+            return grid;
+        }
+    }
+
+    // FNV-1a; совпадения хешей отсеиваются проверкой записи
+    private static long playerKey(String name) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            hash = (hash ^ name.charAt(i)) * 0x100000001b3L;
+        }
+        return PLAYER_KEY | (hash & KEY_MASK);
+    }
+
+    static GameBoard replay(ArchivedGame game) {
+        GameBoard board = new GameBoard(game.getBoardSize());
+        for (Position move : game.getMovesList()) {
+            board.replayStone(move.getX(), move.getY());
+        }
+        return board;
+    }
+
+    private void index(ActiveIndex index, long offset, ArchivedGame game, StoneGrid grid, GameBoard board) {
+        gameKeys.clear();
+        LongConsumer keys = key -> {
+            if (gameKeys.add(key)) index.add(key);
+        };
+        keys.accept(playerKey(game.getBlackPlayer()));
+        keys.accept(playerKey(game.getWhitePlayer()));
+        keys.accept(WINNER_KEY | game.getWinnerValue());
+        int size = game.getBoardSize();
+        collectWindows(grid, board, size, SMALL_WINDOW, SMALL_WINDOW_STONES, SMALL_WINDOW_KEY, keys);
+        collectWindows(grid, board, size, LARGE_WINDOW, LARGE_WINDOW_STONES, LARGE_WINDOW_KEY, keys);
+        index.publish((int) offset, game.getFinishedAtMillis());
+        lastFinishedAt = game.getFinishedAtMillis();
+        gameCount++;
+    }
+
+    private void loadSegment(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int magic = channel.size() < 4 ? 0 : readFully(channel, 0, 4).getInt();
+        if (magic != SEGMENT_MAGIC && magic != SEGMENT_MAGIC_V1) {
+            channel.close();
+            throw new IOException("Поврежденный сегмент архива: " + file);
+        }
+        boolean storedGrids = magic == SEGMENT_MAGIC;
+
+        // Закрытый сегмент с индексом отображается без чтения записей
+        SealedIndex sealed = SealedIndex.open(indexFile(file), channel.size());
+        if (sealed != null) {
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            channel.close();
+            addSegment(new Segment(file, storedGrids, channel, data, sealed));
+            gameCount += sealed.records();
+            if (sealed.records() > 0) {
+                lastFinishedAt = sealed.finishedAt(sealed.records() - 1);
+            }
+            return;
+        }
+
+        Segment segment = new Segment(file, storedGrids, channel, null, new ActiveIndex());
+        addSegment(segment);
+        ActiveIndex index = (ActiveIndex) segment.index;
+        long position = 4;
+        long size = channel.size();
+        while (position + 4 <= size) {
+            int length = readFully(channel, position, 4).getInt();
+            if (length < 0 || position + 4 + length > size) {
+                break;
+            }
+            byte[] payload = readFully(channel, position + 4, length).array();
+            ArchivedGame game = decode(payload, storedGrids);
+            StoneGrid grid = storedGrids ? readGrid(payload) : null;
+            GameBoard board = null;
+            if (grid == null) {
+                board = replay(game);
+                grid = StoneGrid.of(board);
+            }
+            index(index, position, game, grid, board);
+            position += 4 + length;
+        }
+        // Недописанная запись после аварийной остановки
+        if (position < size) {
+            System.err.println("Сегмент " + file + " обрезан до " + position + " байт");
+            channel.truncate(position);
+        }
+    }
+
+    /** Записывает индекс сегмента на диск и переводит сегмент на отображенные файлы. */
+    private void seal(Segment segment) throws IOException {
+        ActiveIndex index = (ActiveIndex) segment.index;
+        long dataLength = segment.channel.size();
+        Path indexFile = indexFile(segment.file);
+        Path temporary = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        ByteBuffer bytes = index.serialize(dataLength);
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (bytes.hasRemaining()) {
+                out.write(bytes);
+            }
+            out.force(true);
+        }
+        Files.move(temporary, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        SealedIndex sealed = SealedIndex.open(indexFile, dataLength);
+        if (sealed == null) {
+            throw new IOException("Не удалось прочитать только что записанный индекс " + indexFile);
+        }
+        // Поиск, начатый до закрытия, дочитает записи из отображения, а не из закрытого канала
+        segment.data = segment.channel.map(FileChannel.MapMode.READ_ONLY, 0, dataLength);
+        segment.index = sealed;
+        segment.channel.close();
+    }
+
+    private Segment createSegment() throws IOException {
+        Path file = directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, segments.length, SEGMENT_SUFFIX));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(4);
+        header.putInt(SEGMENT_MAGIC).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        Segment segment = new Segment(file, true, channel, null, new ActiveIndex());
+        addSegment(segment);
+        return segment;
+    }
+
+    private void addSegment(Segment segment) {
+        Segment[] current = Arrays.copyOf(segments, segments.length + 1);
+        current[current.length - 1] = segment;
+        segments = current;
+    }
+
+    private Segment lastSegment() {
+        Segment[] current = segments;
+        return current.length == 0 ? null : current[current.length - 1];
+    }
+
+    private static Path indexFile(Path segmentFile) {
+        String name = segmentFile.getFileName().toString();
+        return segmentFile.resolveSibling(name.substring(0, name.length() - SEGMENT_SUFFIX.length()) + INDEX_SUFFIX);
+    }
+
+    private static int lowerBound(SegmentIndex index, int records, long key) {
+        int lo = 0, hi = records;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (index.finishedAt(mid) < key) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Неожиданный конец сегмента архива");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    // Ходы хранятся как номер клетки x * size + y в формате varint; перед ними
+    // итоговая позиция в прямоугольнике с камнями (см. StoneGrid)
+    private static byte[] encode(ArchivedGame game, StoneGrid grid) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128 + game.getMovesCount() * 2);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(game.getGameId());
+        out.writeLong(game.getFinishedAtMillis());
+        out.writeInt(game.getBoardSize());
+        out.writeByte(game.getWinnerValue());
+        out.writeUTF(game.getBlackPlayer());
+        out.writeUTF(game.getWhitePlayer());
+        grid.write(out);
+        writeVarLong(out, game.getMovesCount());
+        long size = game.getBoardSize();
+        for (Position move : game.getMovesList()) {
+            writeVarLong(out, move.getX() * size + move.getY());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static ArchivedGame decode(byte[] payload, boolean storedGrids) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        ArchivedGame.Builder game = ArchivedGame.newBuilder()
+                .setGameId(in.readInt())
+                .setFinishedAtMillis(in.readLong())
+                .setBoardSize(in.readInt())
+                .setWinnerValue(in.readByte())
+                .setBlackPlayer(in.readUTF())
+                .setWhitePlayer(in.readUTF());
+        if (storedGrids) {
+            StoneGrid.read(in);
+        }
+        long size = game.getBoardSize();
+        long count = readVarLong(in);
+        for (long i = 0; i < count; i++) {
+            long cell = readVarLong(in);
+            game.addMoves(Positions.of((int) (cell / size), (int) (cell % size)));
+        }
+        return game.build();
+    }
+
+    private static int boardSize(byte[] payload) {
+        return ByteBuffer.wrap(payload).getInt(12);
+    }
+
+    /** Сохраненная итоговая позиция записи или null, если камни слишком разбросаны. */
+    private static StoneGrid readGrid(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        in.skipBytes(4 + 8 + 4 + 1);
+        in.skipBytes(in.readUnsignedShort());
+        in.skipBytes(in.readUnsignedShort());
+        return StoneGrid.read(in);
+    }
+
+    private static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Некорректный varint в архиве");
+    }
+
+    /** Файл сегмента: дописываемый читается через канал, у закрытого данные отображены в память. */
+    private static final class Segment {
+        final Path file;
+        final boolean storedGrids;
+        // У закрытого сегмента канал уже закрыт
+        final FileChannel channel;
+        volatile ByteBuffer data;
+        volatile SegmentIndex index;
+
+        Segment(Path file, boolean storedGrids, FileChannel channel, ByteBuffer data, SegmentIndex index) {
+            this.file = file;
+            this.storedGrids = storedGrids;
+            this.channel = channel;
+            this.data = data;
+            this.index = index;
+        }
+
+        boolean isSealed() {
+            return data != null;
+        }
+
+        byte[] payload(long offset) throws IOException {
+            ByteBuffer mapped = data;
+            if (mapped == null) {
+                // Позиционное чтение FileChannel безопасно параллельно с дописыванием
+                try {
+                    ByteBuffer header = readFully(channel, offset, 4);
+                    return readFully(channel, offset + 4, header.getInt()).array();
+                } catch (ClosedChannelException e) {
+                    // Сегмент закрылся во время поиска
+                    mapped = data;
+                    if (mapped == null) throw e;
+                }
+            }
+            int position = (int) offset;
+            byte[] payload = new byte[mapped.getInt(position)];
+            ByteBuffer view = mapped.duplicate();
+            view.position(position + 4);
+            view.get(payload);
+            return payload;
+        }
+    }
+
+    /** Номера партий сегмента по возрастанию. */
+    private interface Postings {
+        int size();
+
+        int get(int i);
+
+        default int lowerBound(int key) {
+            int lo = 0, hi = size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (get(mid) < key) lo = mid + 1; else hi = mid;
+            }
+            return lo;
+        }
+
+        default boolean contains(int value) {
+            int i = lowerBound(value);
+            return i < size() && get(i) == value;
+        }
+    }
+
+    private interface SegmentIndex {
+        /** Число опубликованных партий; списки могут содержать и более новые номера. */
+        int records();
+
+        long offset(int record);
+
+        long finishedAt(int record);
+
+        /** Список партий по ключу или null, если ключ в сегменте не встречается. */
+        Postings postings(long key);
+    }
+
+    /**
+     * Индекс дописываемого сегмента. Пишет только append под блокировкой архива;
+     * число партий увеличивается последним, так что читатель без блокировки видит
+     * для каждой опубликованной партии и ее смещение, и все ее ключи.
+     */
+    private static final class ActiveIndex implements SegmentIndex {
+        private final Map<Long, IntList> postings = new ConcurrentHashMap<>();
+        private volatile int[] offsets = new int[1024];
+        private volatile long[] finishedAt = new long[1024];
+        private volatile int records;
+
+        void add(long key) {
+            postings.computeIfAbsent(key, k -> new IntList()).add(records);
+        }
+
+        void publish(int offset, long finished) {
+            int record = records;
+            if (record == offsets.length) {
+                offsets = Arrays.copyOf(offsets, record * 2);
+                finishedAt = Arrays.copyOf(finishedAt, record * 2);
+            }
+            offsets[record] = offset;
+            finishedAt[record] = finished;
+            records = record + 1;
+        }
+
+        @Override
+        public int records() {
+            return records;
+        }
+
+        @Override
+        public long offset(int record) {
+            return offsets[record];
+        }
+
+        @Override
+        public long finishedAt(int record) {
+            return finishedAt[record];
+        }
+
+        @Override
+        public Postings postings(long key) {
+            IntList list = postings.get(key);
+            return list != null ? list.view() : null;
+        }
+
+        ByteBuffer serialize(long dataLength) {
+            long[] keys = postings.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+            long total = 0;
+            for (long key : keys) {
+                total += postings.get(key).size;
+            }
+            long length = SealedIndex.HEADER + records * 12L + keys.length * 12L + 4 + total * 2;
+            ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(length));
+            buffer.putInt(INDEX_MAGIC).putInt(records).putInt(keys.length).putLong(dataLength);
+            for (int i = 0; i < records; i++) {
+                buffer.putInt(offsets[i]);
+            }
+            for (int i = 0; i < records; i++) {
+                buffer.putLong(finishedAt[i]);
+            }
+            for (long key : keys) {
+                buffer.putLong(key);
+            }
+            int start = 0;
+            for (long key : keys) {
+                buffer.putInt(start);
+                start += postings.get(key).size;
+            }
+            buffer.putInt(start);
+            for (long key : keys) {
+                IntList list = postings.get(key);
+                for (int i = 0; i < list.size; i++) {
+                    buffer.putShort((short) list.data[i]);
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    /**
+     * Индекс закрытого сегмента, отображенный из файла:
+     * заголовок, смещения и время завершения партий, отсортированные ключи,
+     * начала списков и сами списки по два байта на номер.
+     */
+    private static final class SealedIndex implements SegmentIndex {
+        static final int HEADER = 4 + 4 + 4 + 8;
+
+        private final ByteBuffer buffer;
+        private final int records;
+        private final int keys;
+        private final int finishedAtAt;
+        private final int keysAt;
+        private final int startsAt;
+        private final int postingsAt;
+
+        private SealedIndex(ByteBuffer buffer, int records, int keys) {
+            this.buffer = buffer;
+            this.records = records;
+            this.keys = keys;
+            this.finishedAtAt = HEADER + records * 4;
+            this.keysAt = finishedAtAt + records * 8;
+            this.startsAt = keysAt + keys * 8;
+            this.postingsAt = startsAt + (keys + 1) * 4;
+        }
+
+        /** Индекс или null, если файла нет или он не соответствует сегменту - тогда сегмент переиндексируется. */
+        static SealedIndex open(Path file, long dataLength) throws IOException {
+            if (!Files.exists(file)) {
+                return null;
+            }
+            ByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                if (channel.size() < HEADER || channel.size() > Integer.MAX_VALUE) {
+                    return null;
+                }
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            if (buffer.getInt(0) != INDEX_MAGIC || buffer.getLong(12) != dataLength) {
+                return null;
+            }
+            int records = buffer.getInt(4);
+            int keys = buffer.getInt(8);
+            if (records < 0 || records > SEGMENT_RECORD_LIMIT || keys < 0 ||
+                    HEADER + records * 12L + keys * 12L + 4 > buffer.capacity()) {
+                return null;
+            }
+            SealedIndex index = new SealedIndex(buffer, records, keys);
+            long expected = (long) index.postingsAt + 2L * buffer.getInt(index.startsAt + keys * 4);
+            return expected == buffer.capacity() ? index : null;
+        }
+
+        @Override
+        public int records() {
+            return records;
+        }
+
+        @Override
+        public long offset(int record) {
+            return buffer.getInt(HEADER + record * 4);
+        }
+
+        @Override
+        public long finishedAt(int record) {
+            return buffer.getLong(finishedAtAt + record * 8);
+        }
+
+        @Override
+        public Postings postings(long key) {
+            int lo = 0, hi = keys;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                long value = buffer.getLong(keysAt + mid * 8);
+                if (value < key) lo = mid + 1;
+                else if (value > key) hi = mid;
+                else {
+                    int start = buffer.getInt(startsAt + mid * 4);
+                    int end = buffer.getInt(startsAt + mid * 4 + 4);
+                    return new MappedPostings(buffer, postingsAt + start * 2, end - start);
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class MappedPostings implements Postings {
+        private final ByteBuffer buffer;
+        private final int start;
+        private final int size;
+
+        MappedPostings(ByteBuffer buffer, int start, int size) {
+            this.buffer = buffer;
+            this.start = start;
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public int get(int i) {
+            return buffer.getShort(start + i * 2) & 0xFFFF;
+        }
+    }
+
+    /** Множество ключей одной партии с открытой адресацией; ключ 0 не встречается - у всех есть семейство. */
+    private static final class KeySet {
+        private long[] table = new long[1024];
+        private int size;
+
+        boolean add(long key) {
+            if (size * 2 >= table.length) {
+                long[] old = table;
+                table = new long[old.length * 2];
+                size = 0;
+                for (long value : old) {
+                    if (value != 0) add(value);
+                }
+            }
+            int mask = table.length - 1;
+            int i = Long.hashCode(key * 0x9E3779B97F4A7C15L) & mask;
+            while (table[i] != 0) {
+                if (table[i] == key) return false;
+                i = (i + 1) & mask;
+            }
+            table[i] = key;
+            size++;
+            return true;
+        }
+
+        void clear() {
+            if (size > 0) {
+                Arrays.fill(table, 0);
+                size = 0;
+            }
+        }
+    }
+
+    /** Возрастающий список номеров партий дописываемого сегмента. */
+    private static class IntList {
+        volatile int[] data = new int[8];
+        volatile int size;
+
+        void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size] = value;
+            size = size + 1;
+        }
+
+        // Сначала размер, потом массив: массив не старше размера
+        Postings view() {
+            int count = size;
+            int[] values = data;
+            return new Postings() {
+                @Override
+                public int size() {
+                    return count;
+                }
+
+                @Override
+                public int get(int i) {
+                    return values[i];
+                }
+            };
+        }
+    }
+}
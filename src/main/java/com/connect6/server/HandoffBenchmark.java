@@ -0,0 +1,117 @@
+package com.connect6.server;
+
+import com.connect6.grpc.*;
+import com.connect6.rules.GameBoard;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.stub.StreamObserver;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Замер времени передачи живых игр преемнику.
+ * Поднимает два сервера на localhost, загружает в первый синтетические партии
+ * и измеряет drainTo на второй.
+ *
+ * Аргументы: [число игр] [камней в партии] [порт источника] [порт преемника]
+ */
+public class HandoffBenchmark {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int stones = args.length > 1 ? Integer.parseInt(args[1]) : 41;
+        int sourcePort = args.length > 2 ? Integer.parseInt(args[2]) : 18080;
+        int successorPort = args.length > 3 ? Integer.parseInt(args[3]) : 18081;
+
+        Connect6GrpcServer source = new Connect6GrpcServer(sourcePort,
+                Files.createTempDirectory("connect6-source"));
+        Connect6GrpcServer successor = new Connect6GrpcServer(successorPort,
+                Files.createTempDirectory("connect6-successor"));
+        source.start();
+        successor.start();
+
+        try {
+            seed(sourcePort, games, stones);
+
+            long start = System.nanoTime();
+            int transferred = source.drainTo("localhost:" + successorPort);
+            long elapsedMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+
+            System.out.println("Игр передано: " + transferred + " из " + games);
+            System.out.println("Время передачи: " + elapsedMicros / 1000.0 + " мс, " +
+                    (transferred > 0 ? elapsedMicros / (double) transferred : 0) + " мкс на игру");
+        } finally {
+            source.stop();
+            successor.stop();
+        }
+    }
+
+    private static void seed(int port, int games, int stones) throws InterruptedException {
+        ManagedChannel channel = ManagedChannelBuilder.forAddress("localhost", port)
+                .usePlaintext()
+                .build();
+        try {
+            CountDownLatch done = new CountDownLatch(1);
+            StreamObserver<GameSnapshot> snapshots = Connect6GameGrpc.newStub(channel)
+                    .importGames(new StreamObserver<ImportResponse>() {
+                        // Ответ приходит на каждую игру, печатаем только итог
+                        private int imported;
+
+                        @Override
+                        public void onNext(ImportResponse response) {
+                            imported = response.getImported();
+                        }
+
+                        @Override
+                        public void onError(Throwable t) {
+                            System.err.println("Ошибка загрузки: " + t.getMessage());
+                            done.countDown();
+                        }
+
+                        @Override
+                        public void onCompleted() {
+                            System.out.println("Загружено игр: " + imported);
+                            done.countDown();
+                        }
+                    });
+
+            Random random = new Random(42);
+            for (int i = 0; i < games; i++) {
+                snapshots.onNext(randomGame(random, i + 1, 2 * i + 1, 2 * i + 2, stones));
+            }
+            snapshots.onCompleted();
+            done.await(5, TimeUnit.MINUTES);
+        } finally {
+            channel.shutdown();
+        }
+    }
+
+    private static GameSnapshot randomGame(Random random, int gameId, int blackId, int whiteId, int stones) {
+        GameBoard board = new GameBoard();
+        int size = board.getBoardSize();
+        board.replayStone(board.getCenter(), board.getCenter());
+        while (board.getStoneCount() < stones) {
+            int x = random.nextInt(size);
+            int y = random.nextInt(size);
+            if (board.getStone(x, y) == StoneColor.EMPTY) {
+                board.replayStone(x, y);
+            }
+        }
+
+        GameSnapshot.Builder snapshot = GameSnapshot.newBuilder()
+                .setGameId(gameId)
+                .setBoardSize(size)
+                .setBlackPlayer(PlayerSnapshot.newBuilder().setPlayerId(blackId).setName("black-" + gameId))
+                .setWhitePlayer(PlayerSnapshot.newBuilder().setPlayerId(whiteId).setName("white-" + gameId))
+                .setCurrentPlayerId(GameBoard.colorOfMove(board.getStoneCount()) == StoneColor.BLACK ?
+                        blackId : whiteId);
+        for (int i = 0; i < board.getStoneCount(); i++) {
+            snapshot.addMoveCoords(board.getMoveX(i));
+            snapshot.addMoveCoords(board.getMoveY(i));
+        }
+        return snapshot.build();
+    }
+}
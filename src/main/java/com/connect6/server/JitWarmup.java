@@ -0,0 +1,203 @@
+package com.connect6.server;
+
+import com.connect6.grpc.*;
+import com.connect6.rules.GameBoard;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Прогрев JIT до открытия публичного порта.
+ * Синтетические партии идут через настоящий сервис по in-process каналу, пока средняя задержка
+ * хода не перестанет меняться. In-process транспорт не сериализует сообщения, поэтому
+ * каждое сообщение дополнительно прогоняется через protobuf вручную.
+ * Часть партий заканчивается победой, чтобы рассылка итога и запись в архив тоже были скомпилированы.
+ */
+final class JitWarmup {
+    static final int GAMES_PER_ROUND = 16;
+    private static final double SETTLE_TOLERANCE = 0.05;
+    private static final int SETTLED_ROUNDS = 3;
+
+    private JitWarmup() {
+    }
+
+    /** @return время прогрева в миллисекундах */
+    static long run(long maxMillis) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        String name = InProcessServerBuilder.generateName();
+        // Отдельный экземпляр сервиса со своим временным архивом: синтетические партии
+        // не попадают ни в состояние сервера, ни в его архив
+        Path archiveDir = Files.createTempDirectory("connect6-warmup");
+        GameArchive archive = GameArchive.open(archiveDir);
+        Connect6GameService service = new Connect6GameService(archive);
+        Server server = InProcessServerBuilder.forName(name)
+                .directExecutor()
+                .addService(service)
+                .build()
+                .start();
+        ManagedChannel channel = InProcessChannelBuilder.forName(name)
+                .directExecutor()
+                .build();
+
+        try {
+            SteadyState steady = new SteadyState();
+            int round = 0;
+            while (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < maxMillis) {
+                double latency = playRound(channel, GAMES_PER_ROUND, true);
+                round++;
+                System.out.printf("Прогрев, раунд %d: %.1f мкс на ход%n", round, latency);
+                if (steady.add(latency)) {
+                    break;
+                }
+            }
+        } finally {
+            channel.shutdownNow();
+            server.shutdownNow();
+            service.shutdown();
+            archive.close();
+            deleteRecursively(archiveDir);
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * Играет по одной партии в каждой из games пар игроков: четные партии идут без победителя,
+     * нечетные выигрывают черные.
+     *
+     * @return средняя задержка хода в микросекундах
+     */
+    static double playRound(ManagedChannel channel, int games, boolean serialize) throws InterruptedException {
+        Connect6GameGrpc.Connect6GameStub asyncStub = Connect6GameGrpc.newStub(channel);
+        Connect6GameGrpc.Connect6GameBlockingStub blockingStub = Connect6GameGrpc.newBlockingStub(channel);
+
+        int players = games * 2;
+        ConnectResponse[] responses = new ConnectResponse[players];
+        CountDownLatch started = new CountDownLatch(players);
+        List<StreamObserver<ConnectRequest>> connections = new ArrayList<>();
+        for (int i = 0; i < players; i++) {
+            int index = i;
+            StreamObserver<ConnectRequest> connection = asyncStub.connectPlayer(new StreamObserver<ConnectResponse>() {
+                @Override
+                public void onNext(ConnectResponse response) {
+                    if (response.getColor() != StoneColor.EMPTY) {
+                        responses[index] = response;
+                        started.countDown();
+                    }
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                }
+
+                @Override
+                public void onCompleted() {
+                }
+            });
+            connection.onNext(ConnectRequest.newBuilder()
+                    .setPlayerName("warmup-" + i)
+                    .setBoardSize(GameBoard.DEFAULT_BOARD_SIZE)
+                    .build());
+            connections.add(connection);
+        }
+        if (!started.await(30, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Синтетические игры не начались");
+        }
+
+        Map<Integer, int[]> playersByGame = new HashMap<>();
+        for (ConnectResponse response : responses) {
+            asyncStub.getGameUpdates(UpdateRequest.newBuilder().setPlayerId(response.getPlayerId()).build(),
+                    new StreamObserver<GameUpdate>() {
+                        @Override
+                        public void onNext(GameUpdate update) {
+                            if (serialize) roundTrip(update);
+                        }
+
+                        @Override
+                        public void onError(Throwable t) {
+                        }
+
+                        @Override
+                        public void onCompleted() {
+                        }
+                    });
+            int[] ids = playersByGame.computeIfAbsent(response.getGameId(), id -> new int[2]);
+            ids[response.getColor() == StoneColor.BLACK ? 0 : 1] = response.getPlayerId();
+        }
+
+        List<List<MoveRequest>> scripts = new ArrayList<>();
+        for (int[] ids : playersByGame.values()) {
+            scripts.add(scripts.size() % 2 == 0 ?
+                    SyntheticGames.drawGame(ids[0], ids[1], GameBoard.DEFAULT_BOARD_SIZE) :
+                    SyntheticGames.decisiveGame(ids[0], ids[1], GameBoard.DEFAULT_BOARD_SIZE));
+        }
+
+        // Партии идут вперемешку, как на живом сервере
+        long totalNanos = 0;
+        int moves = 0;
+        for (int step = 0; ; step++) {
+            boolean any = false;
+            for (List<MoveRequest> script : scripts) {
+                if (step >= script.size()) continue;
+                any = true;
+                MoveRequest request = script.get(step);
+                long before = System.nanoTime();
+                MoveResponse response = blockingStub.makeMove(serialize ? roundTrip(request) : request);
+                if (serialize) roundTrip(response);
+                totalNanos += System.nanoTime() - before;
+                moves++;
+                if (!response.getSuccess()) {
+                    throw new IllegalStateException("Синтетический ход отклонен: " + response.getMessage());
+                }
+            }
+            if (!any) break;
+        }
+
+        for (StreamObserver<ConnectRequest> connection : connections) {
+            connection.onCompleted();
+        }
+        return moves == 0 ? 0 : totalNanos / 1e3 / moves;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends com.google.protobuf.Message> T roundTrip(T message) {
+        try {
+            return (T) message.getParserForType().parseFrom(message.toByteArray());
+        } catch (com.google.protobuf.InvalidProtocolBufferException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Задержка считается установившейся, когда несколько раундов подряд меняется меньше чем на 5%. */
+    static class SteadyState {
+        private double previous = -1;
+        private int stableRounds;
+
+        boolean add(double latency) {
+            if (previous > 0 && Math.abs(latency - previous) / previous < SETTLE_TOLERANCE) {
+                stableRounds++;
+            } else {
+                stableRounds = 0;
+            }
+            previous = latency;
+            return stableRounds >= SETTLED_ROUNDS;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.connect6.server;
+
+import com.connect6.grpc.*;
+import com.connect6.rules.GameBoard;
+import io.grpc.stub.StreamObserver;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Замер выделения памяти в Connect6GameService.makeMove на один ход.
+ * Сервис вызывается напрямую в текущем потоке, поэтому счетчик выделений потока
+ * учитывает только слой сервиса и доски. Лимит относится только к плотной доске
+ * (до GameBoard.SPARSE_THRESHOLD): разреженная хранит камни в HashMap и выделяет память
+ * на каждый камень, для нее число только печатается. Завершается с кодом 1, если лимит превышен;
+ * тот же замер плотной доски идет в тестах (MoveAllocationTest).
+ *
+ * Аргументы: [лимит байт на ход] [партий прогрева]
+ */
+public class MoveAllocationBenchmark {
+    static final long DEFAULT_MAX_BYTES_PER_MOVE = 256;
+    static final int DENSE_BOARD_SIZE = GameBoard.SPARSE_THRESHOLD;
+    static final int SPARSE_BOARD_SIZE = GameBoard.SPARSE_THRESHOLD + 1;
+
+    public static void main(String[] args) throws InterruptedException {
+        long maxBytesPerMove = args.length > 0 ? Long.parseLong(args[0]) : DEFAULT_MAX_BYTES_PER_MOVE;
+        int warmupGames = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        double dense = bytesPerMove(DENSE_BOARD_SIZE, warmupGames);
+        System.out.println("Доска " + DENSE_BOARD_SIZE + ": " + dense + " байт на ход (лимит " + maxBytesPerMove + ")");
+        double sparse = bytesPerMove(SPARSE_BOARD_SIZE, warmupGames);
+        System.out.println("Доска " + SPARSE_BOARD_SIZE + " (разреженная, без лимита): " + sparse + " байт на ход");
+        if (dense > maxBytesPerMove) {
+            System.err.println("Превышен лимит выделения памяти на ход");
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    /** Играет warmupGames партий для прогрева и возвращает среднее выделение на ход в следующей. */
+    static double bytesPerMove(int boardSize, int warmupGames) throws InterruptedException {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        Connect6GameService service = new Connect6GameService();
+        try {
+            for (int i = 0; i < warmupGames; i++) {
+                play(service, startGame(service, boardSize), null, 0, new long[1]);
+            }
+
+            List<MoveRequest> moves = startGame(service, boardSize);
+            long[] allocated = new long[1];
+            int played = play(service, moves, threads, threadId, allocated);
+            return allocated[0] / (double) played;
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    private static int play(Connect6GameService service, List<MoveRequest> moves,
+                            com.sun.management.ThreadMXBean threads, long threadId, long[] allocated) {
+        ResponseHolder response = new ResponseHolder();
+        int played = 0;
+        for (MoveRequest move : moves) {
+            long before = threads != null ? threads.getThreadAllocatedBytes(threadId) : 0;
+            service.makeMove(move, response);
+            if (threads != null) {
+                allocated[0] += threads.getThreadAllocatedBytes(threadId) - before;
+            }
+            if (!response.last.getSuccess()) {
+                throw new IllegalStateException("Ход отклонен: " + response.last.getMessage());
+            }
+            played++;
+        }
+        return played;
+    }
+
+    /** Подключает двух игроков и готовит полную партию без победителя. */
+    private static List<MoveRequest> startGame(Connect6GameService service, int boardSize)
+            throws InterruptedException {
+        ConnectResponse[] responses = new ConnectResponse[2];
+        CountDownLatch started = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++) {
+            int index = i;
+            StreamObserver<ConnectRequest> connect = service.connectPlayer(new StreamObserver<ConnectResponse>() {
+                @Override
+                public void onNext(ConnectResponse response) {
+                    if (response.getColor() != StoneColor.EMPTY) {
+                        responses[index] = response;
+                        started.countDown();
+                    }
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                }
+
+                @Override
+                public void onCompleted() {
+                }
+            });
+            connect.onNext(ConnectRequest.newBuilder()
+                    .setPlayerName("bench-" + i)
+                    .setBoardSize(boardSize)
+                    .build());
+        }
+        if (!started.await(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Игра не началась");
+        }
+
+        int blackId = 0;
+        int whiteId = 0;
+        for (ConnectResponse response : responses) {
+            service.getGameUpdates(UpdateRequest.newBuilder().setPlayerId(response.getPlayerId()).build(),
+                    new NoopObserver<>());
+            if (response.getColor() == StoneColor.BLACK) {
+                blackId = response.getPlayerId();
+            } else {
+                whiteId = response.getPlayerId();
+            }
+        }
+
+        return SyntheticGames.drawGame(blackId, whiteId, boardSize);
+    }
+
+    private static class ResponseHolder extends NoopObserver<MoveResponse> {
+        MoveResponse last;
+
+        @Override
+        public void onNext(MoveResponse value) {
+            last = value;
+        }
+    }
+
+    private static class NoopObserver<T> implements StreamObserver<T> {
+        @Override
+        public void onNext(T value) {
+        }
+
+        @Override
+        public void onError(Throwable t) {
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+    }
+}
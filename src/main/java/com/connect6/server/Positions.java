@@ -0,0 +1,37 @@
+package com.connect6.server;
+
+import com.connect6.grpc.Position;
+import com.connect6.rules.GameBoard;
+
+/**
+ * Общие неизменяемые экземпляры Position для клеток плотных досок.
+ * Для разреженных досок за пределами таблицы создается новый объект.
+ */
+final class Positions {
+    /** Отсутствующий второй камень первого хода черных. */
+    static final Position NONE = Position.newBuilder().setX(-1).setY(-1).build();
+
+    private static final int SIZE = GameBoard.SPARSE_THRESHOLD;
+    private static final Position[] CELLS = new Position[SIZE * SIZE];
+
+    static {
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) {
+                CELLS[x * SIZE + y] = Position.newBuilder().setX(x).setY(y).build();
+            }
+        }
+    }
+
+    private Positions() {
+    }
+
+    static Position of(int x, int y) {
+        if (x >= 0 && x < SIZE && y >= 0 && y < SIZE) {
+            return CELLS[x * SIZE + y];
+        }
+        if (x == -1 && y == -1) {
+            return NONE;
+        }
+        return Position.newBuilder().setX(x).setY(y).build();
+    }
+}
@@ -0,0 +1,127 @@
+package com.connect6.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Таблица сессий по номеру игрока.
+ * Номера выдаются подряд, поэтому вместо хеш-таблицы используются блоки массивов:
+ * чтение не упаковывает ключ в Integer и не берет блокировок.
+ * Опустевший блок снимается с таблицы, так что память занимают только блоки живых сессий.
+ */
+final class SessionTable<T> {
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private volatile AtomicReferenceArray<Chunk<T>> chunks = new AtomicReferenceArray<>(16);
+
+    private static final class Chunk<T> {
+        final AtomicReferenceArray<T> slots = new AtomicReferenceArray<>(CHUNK_SIZE);
+        // Число занятых ячеек; -1 - блок снят с таблицы и больше не заполняется
+        final AtomicInteger live = new AtomicInteger();
+
+        boolean retain() {
+            while (true) {
+                int count = live.get();
+                if (count < 0) {
+                    return false;
+                }
+                if (live.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    T get(int id) {
+        Chunk<T> chunk = chunk(id);
+        return chunk != null ? chunk.slots.get(id & CHUNK_MASK) : null;
+    }
+
+    boolean containsKey(int id) {
+        return get(id) != null;
+    }
+
+    void put(int id, T value) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Отрицательный номер сессии: " + id);
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("Пустая сессия: " + id);
+        }
+        int index = id >>> CHUNK_BITS;
+        while (true) {
+            Chunk<T> chunk = chunk(id);
+            if (chunk == null) {
+                chunk = createChunk(index);
+            }
+            // Блок могли снять между чтением и захватом - берем новый
+            if (!chunk.retain()) {
+                continue;
+            }
+            if (chunk.slots.getAndSet(id & CHUNK_MASK, value) != null) {
+                release(index, chunk);
+            }
+            return;
+        }
+    }
+
+    T remove(int id) {
+        Chunk<T> chunk = chunk(id);
+        if (chunk == null) {
+            return null;
+        }
+        T removed = chunk.slots.getAndSet(id & CHUNK_MASK, null);
+        if (removed != null) {
+            release(id >>> CHUNK_BITS, chunk);
+        }
+        return removed;
+    }
+
+    private Chunk<T> chunk(int id) {
+        if (id < 0) return null;
+        int index = id >>> CHUNK_BITS;
+        AtomicReferenceArray<Chunk<T>> current = chunks;
+        return index < current.length() ? current.get(index) : null;
+    }
+
+    private void release(int index, Chunk<T> chunk) {
+        if (chunk.live.decrementAndGet() == 0) {
+            freeChunk(index, chunk);
+        }
+    }
+
+    private synchronized void freeChunk(int index, Chunk<T> chunk) {
+        // Пока ждали блокировку, в блок могли положить новую сессию
+        if (!chunk.live.compareAndSet(0, -1)) {
+            return;
+        }
+        AtomicReferenceArray<Chunk<T>> current = chunks;
+        if (current.get(index) == chunk) {
+            current.set(index, null);
+        }
+    }
+
+    private synchronized Chunk<T> createChunk(int index) {
+        AtomicReferenceArray<Chunk<T>> current = chunks;
+        if (index >= current.length()) {
+            int length = current.length();
+            while (length <= index) {
+                length *= 2;
+            }
+            AtomicReferenceArray<Chunk<T>> grown = new AtomicReferenceArray<>(length);
+            for (int i = 0; i < current.length(); i++) {
+                grown.set(i, current.get(i));
+            }
+            chunks = grown;
+            current = grown;
+        }
+        Chunk<T> chunk = current.get(index);
+        if (chunk == null) {
+            chunk = new Chunk<>();
+            current.set(index, chunk);
+        }
+        return chunk;
+    }
+}
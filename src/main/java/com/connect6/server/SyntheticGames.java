@@ -0,0 +1,72 @@
+package com.connect6.server;
+
+import com.connect6.grpc.MoveRequest;
+import com.connect6.grpc.Position;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Синтетические партии для прогрева и замеров.
+ * Клетка (x, y) отдается черным, если (x + 2y) mod 4 < 2: при такой раскраске ни в одном
+ * направлении нет трех камней одного цвета подряд, поэтому партия идет до заполнения доски без победителя.
+ * Короткая партия с победой черных нужна, чтобы прогреть и путь завершения игры.
+ */
+final class SyntheticGames {
+    private SyntheticGames() {
+    }
+
+    static List<MoveRequest> drawGame(int blackId, int whiteId, int boardSize) {
+        int center = boardSize / 2;
+        List<Position> black = new ArrayList<>();
+        List<Position> white = new ArrayList<>();
+        for (int x = 0; x < boardSize; x++) {
+            for (int y = 0; y < boardSize; y++) {
+                if (x == center && y == center) continue;
+                ((x + 2 * y) % 4 < 2 ? black : white).add(Positions.of(x, y));
+            }
+        }
+
+        List<MoveRequest> moves = new ArrayList<>();
+        moves.add(MoveRequest.newBuilder()
+                .setPlayerId(blackId)
+                .setPosition1(Positions.of(center, center))
+                .setPosition2(Positions.NONE)
+                .build());
+        for (int i = 0; i + 1 < Math.min(black.size(), white.size()); i += 2) {
+            moves.add(MoveRequest.newBuilder()
+                    .setPlayerId(whiteId)
+                    .setPosition1(white.get(i))
+                    .setPosition2(white.get(i + 1))
+                    .build());
+            moves.add(MoveRequest.newBuilder()
+                    .setPlayerId(blackId)
+                    .setPosition1(black.get(i))
+                    .setPosition2(black.get(i + 1))
+                    .build());
+        }
+        return moves;
+    }
+
+    /** Черные строят шесть в ряд от центра вправо и выигрывают четвертым ходом; белые ставят у края доски. */
+    static List<MoveRequest> decisiveGame(int blackId, int whiteId, int boardSize) {
+        int center = boardSize / 2;
+        List<MoveRequest> moves = new ArrayList<>();
+        moves.add(move(blackId, center, center, Positions.NONE));
+        moves.add(move(whiteId, 0, 0, Positions.of(1, 0)));
+        moves.add(move(blackId, center + 1, center, Positions.of(center + 2, center)));
+        moves.add(move(whiteId, 2, 0, Positions.of(3, 0)));
+        moves.add(move(blackId, center + 3, center, Positions.of(center + 4, center)));
+        moves.add(move(whiteId, 4, 1, Positions.of(5, 1)));
+        moves.add(move(blackId, center + 5, center, Positions.of(center, center + 2)));
+        return moves;
+    }
+
+    private static MoveRequest move(int playerId, int x, int y, Position second) {
+        return MoveRequest.newBuilder()
+                .setPlayerId(playerId)
+                .setPosition1(Positions.of(x, y))
+                .setPosition2(second)
+                .build();
+    }
+}
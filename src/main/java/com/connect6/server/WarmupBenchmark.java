@@ -0,0 +1,56 @@
+package com.connect6.server;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Время выхода на установившуюся задержку хода после запуска сервера, с прогревом и без.
+ * Каждый вариант нужно запускать в отдельной JVM, иначе второй замер получит уже прогретый код.
+ * Клиент играет по сети через Netty, отсчет идет от вызова start().
+ *
+ * Аргументы: [true|false - прогрев] [порт] [максимум секунд]
+ */
+public class WarmupBenchmark {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        boolean warmup = args.length > 0 && Boolean.parseBoolean(args[0]);
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 18090;
+        long maxSeconds = args.length > 2 ? Long.parseLong(args[2]) : 120;
+
+        Connect6GrpcServer server = new Connect6GrpcServer(port, Files.createTempDirectory("connect6-warmup"));
+        server.setWarmup(warmup);
+
+        long start = System.nanoTime();
+        server.start();
+        long listeningMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        ManagedChannel channel = ManagedChannelBuilder.forAddress("localhost", port)
+                .usePlaintext()
+                .build();
+        try {
+            JitWarmup.SteadyState steady = new JitWarmup.SteadyState();
+            double firstLatency = -1;
+            double latency = 0;
+            boolean settled = false;
+            while (!settled && System.nanoTime() - start < TimeUnit.SECONDS.toNanos(maxSeconds)) {
+                latency = JitWarmup.playRound(channel, JitWarmup.GAMES_PER_ROUND, false);
+                if (firstLatency < 0) firstLatency = latency;
+                settled = steady.add(latency);
+            }
+            long steadyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            System.out.println("Прогрев: " + (warmup ? "да" : "нет"));
+            System.out.println("Порт открыт через " + listeningMillis + " мс");
+            System.out.printf("Задержка хода в первом раунде: %.1f мкс, установившаяся: %.1f мкс%n",
+                    firstLatency, latency);
+            System.out.println((settled ? "Установившийся режим через " : "Не установилась за ") +
+                    steadyMillis + " мс от запуска");
+        } finally {
+            channel.shutdownNow();
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.connect6.server.jfr;
+
+import jdk.jfr.*;
+
+@Name("connect6.GameArchive")
+@Label("Game Archive")
+@Description("Запись завершенной партии в архив")
+@Category({"Connect6", "Server"})
+@StackTrace(false)
+public class GameArchiveEvent extends Event {
+    @Label("Game Id")
+    public int gameId;
+
+    @Label("Player Id")
+    public int playerId;
+
+    @Label("Stones")
+    public int stones;
+}
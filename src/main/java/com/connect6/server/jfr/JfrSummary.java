@@ -0,0 +1,108 @@
+package com.connect6.server.jfr;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Сводка по событиям Connect6 в файле .jfr: число событий, перцентили длительности
+ * по каждой фазе и самые медленные события с номерами игры и игрока.
+ *
+ * Аргументы: файл.jfr [число самых медленных событий]
+ */
+public class JfrSummary {
+    private static final String PREFIX = "connect6.";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Использование: JfrSummary <файл.jfr> [N]");
+            System.exit(2);
+        }
+        Path file = Paths.get(args[0]);
+        int top = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        Map<String, Phase> phases = new TreeMap<>();
+        PriorityQueue<Slow> slowest = new PriorityQueue<>(Comparator.comparingLong(slow -> slow.nanos));
+
+        try (RecordingFile recording = new RecordingFile(file)) {
+            while (recording.hasMoreEvents()) {
+                RecordedEvent event = recording.readEvent();
+                String name = event.getEventType().getName();
+                if (!name.startsWith(PREFIX)) continue;
+
+                long nanos = event.getDuration().toNanos();
+                phases.computeIfAbsent(name.substring(PREFIX.length()), key -> new Phase()).add(nanos);
+
+                slowest.add(new Slow(name, nanos, event.getInt("gameId"), event.getInt("playerId")));
+                if (slowest.size() > top) {
+                    slowest.poll();
+                }
+            }
+        }
+
+        if (phases.isEmpty()) {
+            System.out.println("В записи нет событий Connect6");
+            return;
+        }
+
+        System.out.printf("%-16s %10s %12s %12s %12s %12s%n", "Фаза", "Событий", "p50, мкс", "p99, мкс", "max, мкс", "всего, мс");
+        for (Map.Entry<String, Phase> entry : phases.entrySet()) {
+            Phase phase = entry.getValue();
+            phase.sort();
+            System.out.printf("%-16s %10d %12.1f %12.1f %12.1f %12.1f%n",
+                    entry.getKey(), phase.size,
+                    phase.percentile(0.50) / 1e3, phase.percentile(0.99) / 1e3,
+                    phase.percentile(1.0) / 1e3, phase.total / 1e6);
+        }
+
+        List<Slow> slow = new ArrayList<>(slowest);
+        slow.sort(Comparator.comparingLong((Slow s) -> s.nanos).reversed());
+        System.out.println();
+        System.out.println("Самые медленные события:");
+        for (Slow s : slow) {
+            System.out.printf("  %-28s %10.1f мкс  игра %d, игрок %d%n",
+                    s.name, s.nanos / 1e3, s.gameId, s.playerId);
+        }
+    }
+
+    private static class Phase {
+        long[] durations = new long[1024];
+        int size;
+        long total;
+
+        void add(long nanos) {
+            if (size == durations.length) {
+                durations = Arrays.copyOf(durations, size * 2);
+            }
+            durations[size++] = nanos;
+            total += nanos;
+        }
+
+        void sort() {
+            Arrays.sort(durations, 0, size);
+        }
+
+        long percentile(double p) {
+            int index = (int) Math.ceil(p * size) - 1;
+            return durations[Math.max(0, Math.min(size - 1, index))];
+        }
+    }
+
+    private static class Slow {
+        final String name;
+        final long nanos;
+        final int gameId;
+        final int playerId;
+
+        Slow(String name, long nanos, int gameId, int playerId) {
+            this.name = name;
+            this.nanos = nanos;
+            this.gameId = gameId;
+            this.playerId = playerId;
+        }
+    }
+}
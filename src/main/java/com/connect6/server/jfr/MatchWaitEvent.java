@@ -0,0 +1,19 @@
+package com.connect6.server.jfr;
+
+import jdk.jfr.*;
+
+@Name("connect6.MatchWait")
+@Label("Match Wait")
+@Description("Время игрока в очереди ожидания до начала игры")
+@Category({"Connect6", "Server"})
+@StackTrace(false)
+public class MatchWaitEvent extends Event {
+    @Label("Game Id")
+    public int gameId;
+
+    @Label("Player Id")
+    public int playerId;
+
+    @Label("Board Size")
+    public int boardSize;
+}
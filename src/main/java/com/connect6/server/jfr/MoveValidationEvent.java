@@ -0,0 +1,19 @@
+package com.connect6.server.jfr;
+
+import jdk.jfr.*;
+
+@Name("connect6.MoveValidation")
+@Label("Move Validation")
+@Description("Проверка хода по правилам")
+@Category({"Connect6", "Server"})
+@StackTrace(false)
+public class MoveValidationEvent extends Event {
+    @Label("Game Id")
+    public int gameId;
+
+    @Label("Player Id")
+    public int playerId;
+
+    @Label("Result")
+    public String result;
+}
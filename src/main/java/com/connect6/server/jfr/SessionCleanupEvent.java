@@ -0,0 +1,16 @@
+package com.connect6.server.jfr;
+
+import jdk.jfr.*;
+
+@Name("connect6.SessionCleanup")
+@Label("Session Cleanup")
+@Description("Освобождение сессии отключившегося игрока")
+@Category({"Connect6", "Server"})
+@StackTrace(false)
+public class SessionCleanupEvent extends Event {
+    @Label("Game Id")
+    public int gameId;
+
+    @Label("Player Id")
+    public int playerId;
+}
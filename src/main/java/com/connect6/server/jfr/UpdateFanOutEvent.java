@@ -0,0 +1,22 @@
+package com.connect6.server.jfr;
+
+import jdk.jfr.*;
+
+@Name("connect6.UpdateFanOut")
+@Label("Update Fan-Out")
+@Description("Отправка обновлений игрокам партии")
+@Category({"Connect6", "Server"})
+@StackTrace(false)
+public class UpdateFanOutEvent extends Event {
+    @Label("Game Id")
+    public int gameId;
+
+    @Label("Player Id")
+    public int playerId;
+
+    @Label("Update Type")
+    public String updateType;
+
+    @Label("Recipients")
+    public int recipients;
+}
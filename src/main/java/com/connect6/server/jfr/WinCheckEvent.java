@@ -0,0 +1,19 @@
+package com.connect6.server.jfr;
+
+import jdk.jfr.*;
+
+@Name("connect6.WinCheck")
+@Label("Stone Placement And Win Check")
+@Description("Постановка камней с проверкой выигрышных линий вокруг них")
+@Category({"Connect6", "Server"})
+@StackTrace(false)
+public class WinCheckEvent extends Event {
+    @Label("Game Id")
+    public int gameId;
+
+    @Label("Player Id")
+    public int playerId;
+
+    @Label("Winner")
+    public String winner;
+}
@@ -0,0 +1,761 @@
+package com.connect6.server;
+
+import com.connect6.grpc.*;
+import com.connect6.rules.GameBoard;
+import com.connect6.rules.MoveCheck;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Нагрузочная проверка Connect6GameService на in-process сервере с пулом потоков.
+ * Много игроков одновременно подключаются, ходят (в том числе не в свою очередь),
+ * переподписываются на обновления и уходят до и во время игры; часть играет через
+ * ConnectPlayer/MakeMove, часть через мультиплексированный Play.
+ *
+ * После прогона по записанной истории проверяются инварианты:
+ * игрок не попадает в две игры, принятые ходы линеаризуемы в порядке очередности
+ * (черные, белые, черные...) с учетом реального времени вызовов и правил доски,
+ * обновления соперника приходят без пропусков внутри потока и по порядку,
+ * каждый оставшийся игрок завершенной игры получает GAME_OVER, и ни один поток обновлений
+ * не получает его дважды (после переподписки новый поток заново получает итог уже завершенной игры).
+ * Тест падает со списком нарушений и seed прогона.
+ *
+ * Параметры (системные свойства): connect6.stress.players, connect6.stress.seconds,
+ * connect6.stress.boardSize, connect6.stress.seed; по умолчанию 64 игрока на 5 секунд.
+ */
+class ConcurrencyStressTest {
+    private static final int SERVER_THREADS = 8;
+    private static final int LEAVE_WHILE_WAITING_PERCENT = 10;
+    private static final int LEAVE_PER_MOVE_PERMILLE = 5;
+    private static final int OUT_OF_TURN_PERCENT = 20;
+    private static final int RESUBSCRIBE_PERCENT = 2;
+    private static final int PLAY_STREAM_PERCENT = 30;
+    private static final long MATCH_TIMEOUT_MILLIS = 3000;
+    private static final long IDLE_TIMEOUT_MILLIS = 1000;
+    private static final long POLL_MILLIS = 5;
+
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.MINUTES)
+    void invariantsHoldUnderLoad() throws Exception {
+        int players = Integer.getInteger("connect6.stress.players", 64);
+        long durationMillis = Long.getLong("connect6.stress.seconds", 5) * 1000;
+        int boardSize = Integer.getInteger("connect6.stress.boardSize", 10);
+        long seed = Long.getLong("connect6.stress.seed", System.nanoTime());
+        System.out.println("Игроков: " + players + ", доска " + boardSize + "x" + boardSize + ", seed " + seed);
+
+        String name = InProcessServerBuilder.generateName();
+        ExecutorService serverThreads = Executors.newFixedThreadPool(SERVER_THREADS);
+        Connect6GameService service = new Connect6GameService();
+        Server server = InProcessServerBuilder.forName(name)
+                .executor(serverThreads)
+                .addService(service)
+                .build()
+                .start();
+        ManagedChannel channel = InProcessChannelBuilder.forName(name).build();
+
+        History history = new History();
+        List<String> violations;
+        try {
+            long deadline = System.currentTimeMillis() + durationMillis;
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < players; i++) {
+                Random random = new Random(seed + i);
+                Actor actor = random.nextInt(100) < PLAY_STREAM_PERCENT ?
+                        new PlayActor(i, channel, history, boardSize, random) :
+                        new UnaryActor(i, channel, history, boardSize, random);
+                Thread thread = new Thread(() -> actor.run(deadline), "stress-" + i);
+                threads.add(thread);
+                thread.start();
+            }
+
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            // Даем серверу доставить последние обновления и обработать уходы
+            Thread.sleep(500);
+
+            violations = history.verify(service);
+            violations.addAll(service.audit());
+        } finally {
+            channel.shutdownNow();
+            server.shutdownNow();
+            serverThreads.shutdownNow();
+            service.shutdown();
+        }
+
+        System.out.println(history.summary(service));
+        assertTrue(violations.isEmpty(), () -> "Нарушений: " + violations.size() + ", seed " + seed + "\n  " +
+                String.join("\n  ", violations.subList(0, Math.min(violations.size(), 50))));
+    }
+
+    /** Принятый сервером ход с моментами вызова и ответа по общим часам истории. */
+    static class Move {
+        final long invoke;
+        long response;
+        final int x1, y1, x2, y2;
+        boolean finished;
+
+        Move(long invoke, int x1, int y1, int x2, int y2) {
+            this.invoke = invoke;
+            this.x1 = x1;
+            this.y1 = y1;
+            this.x2 = x2;
+            this.y2 = y2;
+        }
+
+        boolean matches(GameUpdate update) {
+            return update.getPosition1().getX() == x1 && update.getPosition1().getY() == y1 &&
+                    update.getPosition2().getX() == x2 && update.getPosition2().getY() == y2;
+        }
+    }
+
+    /** Место игрока в партии, как его видит клиент. */
+    static class Participant {
+        final int playerId;
+        final int gameId;
+        final StoneColor color;
+        final int boardSize;
+        // Пишет только поток игрока, читается после завершения всех потоков
+        final List<Move> accepted = new ArrayList<>();
+        volatile boolean subscribed;
+
+        Participant(ConnectResponse start) {
+            this.playerId = start.getPlayerId();
+            this.gameId = start.getGameId();
+            this.color = start.getColor();
+            this.boardSize = start.getBoardSize();
+        }
+    }
+
+    static class History {
+        final AtomicLong clock = new AtomicLong();
+        final Map<Integer, AtomicInteger> startsByPlayer = new ConcurrentHashMap<>();
+        final Map<Integer, List<Participant>> participantsByGame = new ConcurrentHashMap<>();
+        final Map<Integer, List<GameUpdate>> updatesByPlayer = new ConcurrentHashMap<>();
+        // Номер игрока -> номер потока обновлений -> сколько GAME_OVER пришло в этот поток
+        final Map<Integer, Map<Integer, AtomicInteger>> gameOversByPlayer = new ConcurrentHashMap<>();
+        final AtomicInteger streams = new AtomicInteger();
+        final Set<Integer> departed = ConcurrentHashMap.newKeySet();
+        final AtomicInteger rejectedMoves = new AtomicInteger();
+
+        long tick() {
+            return clock.incrementAndGet();
+        }
+
+        Participant recordStart(ConnectResponse start) {
+            startsByPlayer.computeIfAbsent(start.getPlayerId(), id -> new AtomicInteger()).incrementAndGet();
+            Participant participant = new Participant(start);
+            participantsByGame.computeIfAbsent(start.getGameId(), id -> Collections.synchronizedList(new ArrayList<>()))
+                    .add(participant);
+            return participant;
+        }
+
+        int newStream() {
+            return streams.incrementAndGet();
+        }
+
+        void recordUpdate(int playerId, int stream, GameUpdate update) {
+            updatesByPlayer.computeIfAbsent(playerId, id -> Collections.synchronizedList(new ArrayList<>()))
+                    .add(update);
+            if (update.getType() == GameUpdate.UpdateType.GAME_OVER) {
+                gameOversByPlayer.computeIfAbsent(playerId, id -> new ConcurrentHashMap<>())
+                        .computeIfAbsent(stream, id -> new AtomicInteger())
+                        .incrementAndGet();
+            }
+        }
+
+        List<GameUpdate> updates(int playerId, GameUpdate.UpdateType type) {
+            List<GameUpdate> result = new ArrayList<>();
+            List<GameUpdate> all = updatesByPlayer.getOrDefault(playerId, Collections.emptyList());
+            synchronized (all) {
+                for (GameUpdate update : all) {
+                    if (update.getType() == type) {
+                        result.add(update);
+                    }
+                }
+            }
+            return result;
+        }
+
+        List<String> verify(Connect6GameService service) {
+            List<String> violations = new ArrayList<>();
+            for (Map.Entry<Integer, AtomicInteger> entry : startsByPlayer.entrySet()) {
+                if (entry.getValue().get() > 1) {
+                    violations.add("Игрок " + entry.getKey() + " начал " + entry.getValue().get() + " игр");
+                }
+            }
+            for (Map.Entry<Integer, List<Participant>> entry : participantsByGame.entrySet()) {
+                verifyGame(entry.getKey(), new ArrayList<>(entry.getValue()), service, violations);
+            }
+            return violations;
+        }
+
+        private void verifyGame(int gameId, List<Participant> participants, Connect6GameService service,
+                                List<String> violations) {
+            Participant black = null;
+            Participant white = null;
+            for (Participant participant : participants) {
+                if (participant.color == StoneColor.BLACK && black == null) {
+                    black = participant;
+                } else if (participant.color == StoneColor.WHITE && white == null) {
+                    white = participant;
+                } else {
+                    violations.add("Игра #" + gameId + ": лишний игрок " + participant.playerId +
+                            " цветом " + participant.color);
+                }
+            }
+            if (black != null && white != null && black.playerId == white.playerId) {
+                violations.add("Игра #" + gameId + ": игрок " + black.playerId + " играет сам с собой");
+            }
+
+            // Старт ушедшего до подбора игрока мог не дойти: его ходов нет
+            List<Move> blackMoves = black != null ? black.accepted : Collections.emptyList();
+            List<Move> whiteMoves = white != null ? white.accepted : Collections.emptyList();
+            int boardSize = black != null ? black.boardSize : white.boardSize;
+            StoneColor winner = verifyMoves(gameId, boardSize, blackMoves, whiteMoves, violations);
+
+            verifyUpdates(gameId, black, whiteMoves, violations);
+            verifyUpdates(gameId, white, blackMoves, violations);
+
+            boolean active = service.isGameActive(gameId);
+            boolean anyDeparted = black == null || white == null ||
+                    departed.contains(black.playerId) || departed.contains(white.playerId);
+            if (!active && winner == StoneColor.EMPTY && !anyDeparted) {
+                violations.add("Игра #" + gameId + " завершилась без победы и без ухода игрока");
+            }
+            for (Participant participant : participants) {
+                verifyGameOver(participant, active, winner, violations);
+            }
+        }
+
+        /**
+         * Принятые ходы должны выстраиваться в порядок черные, белые, черные...
+         * так, чтобы ход не шел раньше хода, вызов которого начался после его ответа.
+         *
+         * @return победитель по принятым ходам
+         */
+        private StoneColor verifyMoves(int gameId, int boardSize, List<Move> blackMoves, List<Move> whiteMoves,
+                                       List<String> violations) {
+            if (blackMoves.size() != whiteMoves.size() && blackMoves.size() != whiteMoves.size() + 1) {
+                violations.add("Игра #" + gameId + ": принято ходов черных " + blackMoves.size() +
+                        ", белых " + whiteMoves.size());
+                return StoneColor.EMPTY;
+            }
+
+            GameBoard board = new GameBoard(boardSize);
+            long latestInvoke = 0;
+            StoneColor winner = StoneColor.EMPTY;
+            for (int i = 0; i < blackMoves.size() + whiteMoves.size(); i++) {
+                Move move = i % 2 == 0 ? blackMoves.get(i / 2) : whiteMoves.get(i / 2);
+                StoneColor color = i % 2 == 0 ? StoneColor.BLACK : StoneColor.WHITE;
+                if (move.response < latestInvoke) {
+                    violations.add("Игра #" + gameId + ": ход " + (i + 1) + " (" + color +
+                            ") завершился до начала предыдущего по очереди хода - ход вне очереди");
+                }
+                latestInvoke = Math.max(latestInvoke, move.invoke);
+
+                if (winner != StoneColor.EMPTY) {
+                    violations.add("Игра #" + gameId + ": ход " + (i + 1) + " принят после победы " + winner);
+                    break;
+                }
+                MoveCheck check = board.checkMove(move.x1, move.y1, move.x2, move.y2, color);
+                if (check != MoveCheck.OK) {
+                    violations.add("Игра #" + gameId + ": принят недопустимый ход " + (i + 1) + ": " +
+                            check.getMessage());
+                    break;
+                }
+                board.placeStones(move.x1, move.y1, move.x2, move.y2, color);
+                winner = board.checkWinner();
+                if ((winner != StoneColor.EMPTY) != move.finished) {
+                    violations.add("Игра #" + gameId + ": ход " + (i + 1) + " " +
+                            (move.finished ? "объявлен победным, но не выигрывает" : "выигрывает, но игра не завершена"));
+                }
+            }
+            return winner;
+        }
+
+        // Полученные ходы соперника - непрерывный кусок его принятых ходов в том же порядке
+        private void verifyUpdates(int gameId, Participant participant, List<Move> opponentMoves,
+                                   List<String> violations) {
+            if (participant == null) {
+                return;
+            }
+            List<GameUpdate> moves = updates(participant.playerId, GameUpdate.UpdateType.PLAYER_MOVED);
+            if (moves.isEmpty()) {
+                return;
+            }
+            int offset = -1;
+            for (int i = 0; i < opponentMoves.size(); i++) {
+                if (opponentMoves.get(i).matches(moves.get(0))) {
+                    offset = i;
+                    break;
+                }
+            }
+            if (offset < 0 || offset + moves.size() > opponentMoves.size()) {
+                violations.add("Игра #" + gameId + ": игрок " + participant.playerId +
+                        " получил ходы, которых соперник не делал");
+                return;
+            }
+            for (int i = 0; i < moves.size(); i++) {
+                if (!opponentMoves.get(offset + i).matches(moves.get(i))) {
+                    violations.add("Игра #" + gameId + ": игрок " + participant.playerId +
+                            " получил ходы соперника с пропуском или не по порядку");
+                    return;
+                }
+            }
+        }
+
+        private void verifyGameOver(Participant participant, boolean active, StoneColor winner,
+                                    List<String> violations) {
+            List<GameUpdate> gameOvers = updates(participant.playerId, GameUpdate.UpdateType.GAME_OVER);
+            String who = "Игра #" + participant.gameId + ": игрок " + participant.playerId;
+            for (Map.Entry<Integer, AtomicInteger> stream :
+                    gameOversByPlayer.getOrDefault(participant.playerId, Collections.emptyMap()).entrySet()) {
+                if (stream.getValue().get() > 1) {
+                    violations.add(who + " получил GAME_OVER " + stream.getValue().get() +
+                            " раз в одном потоке #" + stream.getKey());
+                }
+            }
+            if (active) {
+                if (!gameOvers.isEmpty()) {
+                    violations.add(who + " получил GAME_OVER, но игра еще идет");
+                }
+                return;
+            }
+            if (departed.contains(participant.playerId) || !participant.subscribed) {
+                return;
+            }
+            if (gameOvers.isEmpty()) {
+                violations.add(who + " не получил GAME_OVER завершенной игры");
+                return;
+            }
+            // Без победного хода игра завершается уходом соперника в пользу оставшегося
+            StoneColor expected = winner != StoneColor.EMPTY ? winner : participant.color;
+            for (GameUpdate gameOver : gameOvers) {
+                if (gameOver.getColor() != expected) {
+                    violations.add(who + " получил GAME_OVER в пользу " + gameOver.getColor() +
+                            ", ожидалось " + expected);
+                    break;
+                }
+            }
+        }
+
+        String summary(Connect6GameService service) {
+            int finished = 0;
+            int accepted = 0;
+            for (Map.Entry<Integer, List<Participant>> entry : participantsByGame.entrySet()) {
+                if (!service.isGameActive(entry.getKey())) {
+                    finished++;
+                }
+                synchronized (entry.getValue()) {
+                    for (Participant participant : entry.getValue()) {
+                        accepted += participant.accepted.size();
+                    }
+                }
+            }
+            return "Игр: " + participantsByGame.size() + ", завершено: " + finished +
+                    ", ушло игроков: " + departed.size() +
+                    ", ходов принято: " + accepted + ", отклонено: " + rejectedMoves.get();
+        }
+    }
+
+    /** Игрок с простой политикой: продолжает свои линии, иначе ставит случайно. */
+    abstract static class Actor {
+        private static final int[][] DIRECTIONS = {{1, 0}, {0, 1}, {1, 1}, {1, -1}};
+
+        final String name;
+        final History history;
+        final int boardSize;
+        final Random random;
+        private boolean[] occupied;
+        private final List<int[]> own = new ArrayList<>();
+
+        Actor(int index, History history, int boardSize, Random random) {
+            this.name = "stress-" + index;
+            this.history = history;
+            this.boardSize = boardSize;
+            this.random = random;
+        }
+
+        void run(long deadline) {
+            try {
+                while (System.currentTimeMillis() < deadline) {
+                    occupied = new boolean[boardSize * boardSize];
+                    own.clear();
+                    session();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                finish();
+            }
+        }
+
+        /** Одно подключение: ожидание соперника, партия или уход. */
+        abstract void session() throws InterruptedException;
+
+        void finish() {
+        }
+
+        boolean leaveWhileWaiting() {
+            return random.nextInt(100) < LEAVE_WHILE_WAITING_PERCENT;
+        }
+
+        boolean leaveDuringGame() {
+            return random.nextInt(1000) < LEAVE_PER_MOVE_PERMILLE;
+        }
+
+        boolean outOfTurn() {
+            return random.nextInt(100) < OUT_OF_TURN_PERCENT;
+        }
+
+        void occupy(int x, int y) {
+            if (x >= 0) {
+                occupied[x * boardSize + y] = true;
+            }
+        }
+
+        void accepted(Move move) {
+            occupy(move.x1, move.y1);
+            occupy(move.x2, move.y2);
+            own.add(new int[]{move.x1, move.y1});
+            if (move.x2 >= 0) {
+                own.add(new int[]{move.x2, move.y2});
+            }
+        }
+
+        /** @return {x1, y1, x2, y2} или null, если свободных клеток не осталось */
+        int[] chooseMove(boolean firstBlackMove) {
+            if (firstBlackMove) {
+                int center = boardSize / 2;
+                return new int[]{center, center, -1, -1};
+            }
+            int[] first = chooseCell(-1);
+            if (first == null) {
+                return null;
+            }
+            int[] second = chooseCell(first[0] * boardSize + first[1]);
+            return second == null ? null : new int[]{first[0], first[1], second[0], second[1]};
+        }
+
+        private int[] chooseCell(int taken) {
+            if (!own.isEmpty() && random.nextInt(10) < 7) {
+                int[] from = own.get(random.nextInt(own.size()));
+                int[] direction = DIRECTIONS[random.nextInt(DIRECTIONS.length)];
+                int sign = random.nextBoolean() ? 1 : -1;
+                for (int step = 1; step < 6; step++) {
+                    int x = from[0] + sign * direction[0] * step;
+                    int y = from[1] + sign * direction[1] * step;
+                    if (x < 0 || y < 0 || x >= boardSize || y >= boardSize) {
+                        break;
+                    }
+                    int cell = x * boardSize + y;
+                    if (!occupied[cell] && cell != taken) {
+                        return new int[]{x, y};
+                    }
+                }
+            }
+            int start = random.nextInt(occupied.length);
+            for (int i = 0; i < occupied.length; i++) {
+                int cell = (start + i) % occupied.length;
+                if (!occupied[cell] && cell != taken) {
+                    return new int[]{cell / boardSize, cell % boardSize};
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Общий цикл партии: ход в свою очередь или, иногда, вне ее, до GAME_OVER,
+         * ухода или простоя.
+         */
+        void play(Participant me, BlockingQueue<GameUpdate> inbox) throws InterruptedException {
+            boolean myTurn = me.color == StoneColor.BLACK;
+            boolean firstBlackMove = myTurn;
+            // Свой победный ход: игра окончена, переподписка только получила бы итог еще раз
+            boolean won = false;
+            long lastProgress = System.currentTimeMillis();
+            while (true) {
+                GameUpdate update = inbox.poll(myTurn ? 0 : POLL_MILLIS, TimeUnit.MILLISECONDS);
+                while (update != null) {
+                    if (update.getType() == GameUpdate.UpdateType.GAME_OVER) {
+                        return;
+                    }
+                    if (update.getType() == GameUpdate.UpdateType.PLAYER_MOVED) {
+                        occupy(update.getPosition1().getX(), update.getPosition1().getY());
+                        occupy(update.getPosition2().getX(), update.getPosition2().getY());
+                        myTurn = true;
+                        lastProgress = System.currentTimeMillis();
+                    }
+                    update = inbox.poll();
+                }
+
+                if (System.currentTimeMillis() - lastProgress > IDLE_TIMEOUT_MILLIS) {
+                    abandon(me);
+                    return;
+                }
+                if (leaveDuringGame() && leave(me)) {
+                    return;
+                }
+                if (!won) {
+                    resubscribe(me, inbox);
+                }
+                if (!myTurn && !outOfTurn()) {
+                    continue;
+                }
+
+                int[] cells = chooseMove(firstBlackMove);
+                if (cells == null) {
+                    abandon(me);
+                    return;
+                }
+                Move move = new Move(history.tick(), cells[0], cells[1], cells[2], cells[3]);
+                MoveResponse response = move(me, move);
+                move.response = history.tick();
+                if (response == null) {
+                    abandon(me);
+                    return;
+                }
+                if (response.getSuccess()) {
+                    move.finished = response.equals(Connect6GameService.GAME_FINISHED);
+                    won |= move.finished;
+                    me.accepted.add(move);
+                    accepted(move);
+                    myTurn = false;
+                    firstBlackMove = false;
+                    lastProgress = System.currentTimeMillis();
+                } else {
+                    history.rejectedMoves.incrementAndGet();
+                }
+            }
+        }
+
+        /** @return ответ сервера или null, если ответа нет */
+        abstract MoveResponse move(Participant me, Move move) throws InterruptedException;
+
+        /** Уход посреди партии; false, если этот способ подключения не умеет уходить. */
+        abstract boolean leave(Participant me);
+
+        void resubscribe(Participant me, BlockingQueue<GameUpdate> inbox) {
+        }
+
+        /** Соперник пропал или ходить некуда. */
+        void abandon(Participant me) {
+            leave(me);
+        }
+    }
+
+    /** Игрок через ConnectPlayer, GetGameUpdates и MakeMove. */
+    static class UnaryActor extends Actor {
+        private final Connect6GameGrpc.Connect6GameStub asyncStub;
+        private final Connect6GameGrpc.Connect6GameBlockingStub blockingStub;
+
+        UnaryActor(int index, ManagedChannel channel, History history, int boardSize, Random random) {
+            super(index, history, boardSize, random);
+            this.asyncStub = Connect6GameGrpc.newStub(channel);
+            this.blockingStub = Connect6GameGrpc.newBlockingStub(channel);
+        }
+
+        @Override
+        void session() throws InterruptedException {
+            AtomicInteger playerId = new AtomicInteger(-1);
+            BlockingQueue<Participant> starts = new LinkedBlockingQueue<>();
+            ClientCallStreamObserver<ConnectRequest> connection = (ClientCallStreamObserver<ConnectRequest>)
+                    asyncStub.connectPlayer(new StreamObserver<ConnectResponse>() {
+                        @Override
+                        public void onNext(ConnectResponse response) {
+                            playerId.set(response.getPlayerId());
+                            if (response.getColor() != StoneColor.EMPTY) {
+                                starts.add(history.recordStart(response));
+                            }
+                        }
+
+                        @Override
+                        public void onError(Throwable t) {
+                        }
+
+                        @Override
+                        public void onCompleted() {
+                        }
+                    });
+            connection.onNext(ConnectRequest.newBuilder()
+                    .setPlayerName(name)
+                    .setBoardSize(boardSize)
+                    .build());
+
+            boolean leave = leaveWhileWaiting();
+            Participant me = starts.poll(leave ? random.nextInt(200) : MATCH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            if (me == null) {
+                // Уход отмечается до отмены: старт, пришедший в этот момент, относится к ушедшему
+                if (playerId.get() >= 0) {
+                    history.departed.add(playerId.get());
+                }
+                connection.cancel("Игрок ушел до начала игры", null);
+                return;
+            }
+
+            BlockingQueue<GameUpdate> inbox = new LinkedBlockingQueue<>();
+            subscribe(me, inbox);
+            play(me, inbox);
+        }
+
+        private void subscribe(Participant me, BlockingQueue<GameUpdate> inbox) {
+            me.subscribed = true;
+            int stream = history.newStream();
+            asyncStub.getGameUpdates(UpdateRequest.newBuilder().setPlayerId(me.playerId).build(),
+                    new StreamObserver<GameUpdate>() {
+                        @Override
+                        public void onNext(GameUpdate update) {
+                            history.recordUpdate(me.playerId, stream, update);
+                            inbox.add(update);
+                        }
+
+                        @Override
+                        public void onError(Throwable t) {
+                        }
+
+                        @Override
+                        public void onCompleted() {
+                        }
+                    });
+        }
+
+        @Override
+        void resubscribe(Participant me, BlockingQueue<GameUpdate> inbox) {
+            if (random.nextInt(100) < RESUBSCRIBE_PERCENT) {
+                subscribe(me, inbox);
+            }
+        }
+
+        @Override
+        MoveResponse move(Participant me, Move move) {
+            return blockingStub.makeMove(MoveRequest.newBuilder()
+                    .setPlayerId(me.playerId)
+                    .setPosition1(Positions.of(move.x1, move.y1))
+                    .setPosition2(Positions.of(move.x2, move.y2))
+                    .build());
+        }
+
+        @Override
+        boolean leave(Participant me) {
+            // Поток подключения закрыт сервером при старте игры, уйти посреди партии нельзя
+            return false;
+        }
+    }
+
+    /** Игрок через мультиплексированный поток Play: одно место за раз. */
+    static class PlayActor extends Actor {
+        private final StreamObserver<PlayRequest> requests;
+        private final BlockingQueue<ConnectResponse> joined = new LinkedBlockingQueue<>();
+        private final BlockingQueue<MoveResponse> moveResults = new LinkedBlockingQueue<>();
+        private final Map<Integer, BlockingQueue<GameUpdate>> inboxes = new ConcurrentHashMap<>();
+        // Места не переподписываются: все обновления идут в одном потоке Play
+        private final int stream;
+        private int nextTag;
+
+        PlayActor(int index, ManagedChannel channel, History history, int boardSize, Random random) {
+            super(index, history, boardSize, random);
+            this.stream = history.newStream();
+            this.requests = Connect6GameGrpc.newStub(channel).play(new StreamObserver<PlayEvent>() {
+                @Override
+                public void onNext(PlayEvent event) {
+                    switch (event.getEventCase()) {
+                        case JOINED:
+                            joined.add(event.getJoined());
+                            break;
+                        case UPDATE:
+                            history.recordUpdate(event.getPlayerId(), stream, event.getUpdate());
+                            inboxes.computeIfAbsent(event.getPlayerId(), id -> new LinkedBlockingQueue<>())
+                                    .add(event.getUpdate());
+                            break;
+                        case MOVE_RESULT:
+                            moveResults.add(event.getMoveResult());
+                            break;
+                        default:
+                            break;
+                    }
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                }
+
+                @Override
+                public void onCompleted() {
+                }
+            });
+        }
+
+        @Override
+        void session() throws InterruptedException {
+            joined.clear();
+            moveResults.clear();
+            requests.onNext(PlayRequest.newBuilder()
+                    .setJoin(JoinGame.newBuilder()
+                            .setPlayerName(name)
+                            .setBoardSize(boardSize)
+                            .setRequestTag(++nextTag))
+                    .build());
+
+            ConnectResponse waiting = joined.poll(MATCH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            if (waiting == null) {
+                return;
+            }
+            int playerId = waiting.getPlayerId();
+            ConnectResponse start = waiting.getColor() != StoneColor.EMPTY ? waiting :
+                    joined.poll(leaveWhileWaiting() ? random.nextInt(200) : MATCH_TIMEOUT_MILLIS,
+                            TimeUnit.MILLISECONDS);
+            if (start == null) {
+                history.departed.add(playerId);
+                sendLeave(playerId);
+                return;
+            }
+
+            Participant me = history.recordStart(start);
+            me.subscribed = true;
+            play(me, inboxes.computeIfAbsent(playerId, id -> new LinkedBlockingQueue<>()));
+        }
+
+        @Override
+        MoveResponse move(Participant me, Move move) throws InterruptedException {
+            requests.onNext(PlayRequest.newBuilder()
+                    .setMove(MoveCommand.newBuilder()
+                            .setGameId(me.gameId)
+                            .setPosition1(Positions.of(move.x1, move.y1))
+                            .setPosition2(Positions.of(move.x2, move.y2)))
+                    .build());
+            return moveResults.poll(MATCH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        boolean leave(Participant me) {
+            history.departed.add(me.playerId);
+            sendLeave(me.playerId);
+            return true;
+        }
+
+        private void sendLeave(int playerId) {
+            requests.onNext(PlayRequest.newBuilder()
+                    .setLeave(LeaveGame.newBuilder().setPlayerId(playerId))
+                    .build());
+        }
+
+        @Override
+        void finish() {
+            requests.onCompleted();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.connect6.server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Замер MoveAllocationBenchmark в фазе тестов: ход на плотной доске укладывается в лимит выделения. */
+class MoveAllocationTest {
+    private static final int WARMUP_GAMES = 20;
+
+    @Test
+    void denseMoveStaysWithinAllocationLimit() throws InterruptedException {
+        double bytesPerMove = MoveAllocationBenchmark.bytesPerMove(
+                MoveAllocationBenchmark.DENSE_BOARD_SIZE, WARMUP_GAMES);
+        System.out.println("Доска " + MoveAllocationBenchmark.DENSE_BOARD_SIZE + ": " + bytesPerMove + " байт на ход");
+        assertTrue(bytesPerMove <= MoveAllocationBenchmark.DEFAULT_MAX_BYTES_PER_MOVE,
+                () -> "Выделено " + bytesPerMove + " байт на ход, лимит " +
+                        MoveAllocationBenchmark.DEFAULT_MAX_BYTES_PER_MOVE);
+    }
+}